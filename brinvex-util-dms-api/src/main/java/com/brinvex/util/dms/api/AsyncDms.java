@@ -0,0 +1,177 @@
+package com.brinvex.util.dms.api;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SequencedCollection;
+import java.util.SequencedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static com.brinvex.util.dms.api.Dms.DEFAULT_CHARSET;
+
+/**
+ * The asynchronous counterpart of {@link Dms}.
+ * Each method performs the same operation as the same-named method of {@link Dms},
+ * but it returns immediately and completes the returned future once the operation is done.
+ * The number of operations running concurrently against one workspace is limited,
+ * see {@link DmsConfig#asyncConcurrency()}, the remaining ones wait without blocking the caller.
+ * The batch operations, e.g. {@link #putAllBinaryContent(String, Map)}, count as one operation per document.
+ */
+public interface AsyncDms {
+
+    CompletableFuture<SequencedCollection<String>> getKeys(String directory);
+
+    CompletableFuture<SequencedCollection<String>> getKeys(String directory, KeyQuery query);
+
+    default CompletableFuture<Void> add(String directory, String key, String textContent) {
+        return add(directory, key, textContent, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<Void> add(String directory, String key, String textContent, Charset charset);
+
+    CompletableFuture<Void> add(String directory, String key, byte[] binaryContent);
+
+    CompletableFuture<Void> add(String directory, String key, InputStream inputStream);
+
+    CompletableFuture<Void> add(String directory, String key, ReadableByteChannel channel);
+
+    default CompletableFuture<Boolean> put(String directory, String key, String textContent) {
+        return put(directory, key, textContent, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<Boolean> put(String directory, String key, String textContent, Charset charset);
+
+    CompletableFuture<Boolean> put(String directory, String key, byte[] binaryContent);
+
+    default CompletableFuture<Boolean> put(String directory, String key, Map<String, String> propertiesContent) {
+        return put(directory, key, propertiesContent, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<Boolean> put(String directory, String key, Map<String, String> propertiesContent, Charset charset);
+
+    CompletableFuture<Boolean> put(String directory, String key, InputStream inputStream);
+
+    CompletableFuture<Boolean> put(String directory, String key, ReadableByteChannel channel);
+
+    CompletableFuture<PutResult> putIfChanged(String directory, String key, String textContent, Charset charset);
+
+    default CompletableFuture<PutResult> putIfChanged(String directory, String key, String textContent) {
+        return putIfChanged(directory, key, textContent, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<PutResult> putIfChanged(String directory, String key, byte[] binaryContent);
+
+    CompletableFuture<PutResult> putIfChanged(String directory, String key, Map<String, String> propertiesContent, Charset charset);
+
+    default CompletableFuture<PutResult> putIfChanged(String directory, String key, Map<String, String> propertiesContent) {
+        return putIfChanged(directory, key, propertiesContent, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<Boolean> exists(String directory, String key);
+
+    default CompletableFuture<String> getTextContent(String directory, String key) {
+        return getTextContent(directory, key, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<String> getTextContent(String directory, String key, Charset charset);
+
+    CompletableFuture<String> getTextContent(String directory, String key, Charset charset, Charset alternativeCharset);
+
+    default CompletableFuture<List<String>> getTextLines(String directory, String key) {
+        return getTextLines(directory, key, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<List<String>> getTextLines(String directory, String key, Charset charset);
+
+    default CompletableFuture<List<String>> getTextLines(String directory, String key, int limit) {
+        return getTextLines(directory, key, limit, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<List<String>> getTextLines(String directory, String key, int limit, Charset charset);
+
+    CompletableFuture<List<String>> getTextLines(String directory, String key, int limit, Charset charset, Charset alternativeCharset);
+
+    CompletableFuture<byte[]> getBinaryContent(String directory, String key);
+
+    CompletableFuture<byte[]> getBinaryContent(String directory, String key, long offset, int length);
+
+    default CompletableFuture<Map<String, String>> getPropertiesContent(String directory, String key) {
+        return getPropertiesContent(directory, key, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<Map<String, String>> getPropertiesContent(String directory, String key, Charset charset);
+
+    CompletableFuture<String> getProperty(String directory, String key, String propertyName, Charset charset);
+
+    default CompletableFuture<String> getProperty(String directory, String key, String propertyName) {
+        return getProperty(directory, key, propertyName, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<LocalDateTime> getLastModifiedTime(String directory, String key);
+
+    CompletableFuture<List<DocumentVersion>> getVersions(String directory, String key);
+
+    CompletableFuture<byte[]> getVersionContent(String directory, String key, LocalDateTime obsoleteTime);
+
+    default CompletableFuture<SequencedMap<String, Boolean>> putAllTextContent(String directory, Map<String, String> textContents) {
+        return putAllTextContent(directory, textContents, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<SequencedMap<String, Boolean>> putAllTextContent(String directory, Map<String, String> textContents, Charset charset);
+
+    CompletableFuture<SequencedMap<String, Boolean>> putAllBinaryContent(String directory, Map<String, byte[]> binaryContents);
+
+    default CompletableFuture<SequencedMap<String, String>> getAllTextContent(String directory, Collection<String> keys) {
+        return getAllTextContent(directory, keys, DEFAULT_CHARSET);
+    }
+
+    CompletableFuture<SequencedMap<String, String>> getAllTextContent(String directory, Collection<String> keys, Charset charset);
+
+    CompletableFuture<SequencedMap<String, byte[]>> getAllBinaryContent(String directory, Collection<String> keys);
+
+    CompletableFuture<SequencedMap<String, Boolean>> existsAll(String directory, Collection<String> keys);
+
+    CompletableFuture<Void> delete(String directory, String key);
+
+    CompletableFuture<Void> delete(String directory, Collection<String> keys);
+
+    <KEY> CompletableFuture<SequencedMap<KEY, String>> getRedundantPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc
+    );
+
+    <KEY> CompletableFuture<PeriodCoverage<KEY>> getCoveringPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    );
+
+    CompletableFuture<Integer> purge(String directory, String origKey, LocalDateTime obsoleteBefore);
+
+    default CompletableFuture<Integer> purge(String directory, LocalDateTime obsoleteBefore) {
+        return purge(directory, null, obsoleteBefore);
+    }
+
+    default CompletableFuture<Integer> purge(String directory) {
+        return purge(directory, null, null);
+    }
+
+    CompletableFuture<Void> refresh(String directory);
+
+    CompletableFuture<Void> resetWorkspace();
+
+    CompletableFuture<Void> deleteWorkspace();
+
+    CompletableFuture<Integer> purgeWorkspace(LocalDateTime obsoleteBefore);
+}
@@ -0,0 +1,19 @@
+package com.brinvex.util.dms.api;
+
+/**
+ * A snapshot of the content cache counters, returned by {@link Dms#getContentCacheStats()}.
+ *
+ * @param hitCount      the number of reads served from the cache
+ * @param missCount     the number of reads which loaded the document from the storage
+ * @param evictionCount the number of documents evicted to stay within the memory budget
+ * @param entryCount    the number of documents currently cached
+ * @param weightBytes   the approximate memory currently used by the cached contents
+ */
+public record ContentCacheStats(
+        long hitCount,
+        long missCount,
+        long evictionCount,
+        long entryCount,
+        long weightBytes
+) {
+}
@@ -1,5 +1,9 @@
 package com.brinvex.util.dms.api;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -10,6 +14,7 @@ import java.util.SequencedCollection;
 import java.util.SequencedMap;
 import java.util.SequencedSet;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -28,6 +33,12 @@ public interface Dms {
      */
     SequencedCollection<String> getKeys(String directory);
 
+    /**
+     * Retrieves the keys within the specified directory selected by the query, e.g. a prefix, a range or a page,
+     * sorted in ascending order.
+     */
+    SequencedCollection<String> getKeys(String directory, KeyQuery query);
+
     /**
      * Adds a new document under the given key.
      * If a document with the given key already exists, this method will throw an exception.
@@ -48,6 +59,20 @@ public interface Dms {
      */
     void add(String directory, String key, byte[] binaryContent);
 
+    /**
+     * Adds a new document under the given key, copying the content from the stream chunk by chunk.
+     * If a document with the given key already exists, this method will throw an exception.
+     * The stream is read until its end but is not closed.
+     */
+    void add(String directory, String key, InputStream inputStream);
+
+    /**
+     * Adds a new document under the given key, copying the content from the (blocking) channel chunk by chunk.
+     * If a document with the given key already exists, this method will throw an exception.
+     * The channel is read until its end but is not closed.
+     */
+    void add(String directory, String key, ReadableByteChannel channel);
+
     /**
      * If the key does not already exist, the document is added, and the method returns {@code true}.
      * If the key already exists, the document's content is updated, and the method returns {@code false}.
@@ -84,6 +109,54 @@ public interface Dms {
      */
     boolean put(String directory, String key, Map<String, String> propertiesContent, Charset charset);
 
+    /**
+     * Stores the content read from the stream chunk by chunk. The stream is read until its end but is not closed.
+     * If the key does not already exist, the document is added, and the method returns {@code true}.
+     * If the key already exists, the document's content is updated, and the method returns {@code false}.
+     */
+    boolean put(String directory, String key, InputStream inputStream);
+
+    /**
+     * Stores the content read from the (blocking) channel chunk by chunk. The channel is read until its end but is not closed.
+     * If the key does not already exist, the document is added, and the method returns {@code true}.
+     * If the key already exists, the document's content is updated, and the method returns {@code false}.
+     */
+    boolean put(String directory, String key, ReadableByteChannel channel);
+
+    /**
+     * Like {@link #put(String, String, String, Charset)},
+     * but if the key already exists with the same content, nothing is written and no overridden version is created.
+     */
+    PutResult putIfChanged(String directory, String key, String textContent, Charset charset);
+
+    /**
+     * Like {@link #put(String, String, String)},
+     * but if the key already exists with the same content, nothing is written and no overridden version is created.
+     */
+    default PutResult putIfChanged(String directory, String key, String textContent) {
+        return putIfChanged(directory, key, textContent, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Like {@link #put(String, String, byte[])},
+     * but if the key already exists with the same content, nothing is written and no overridden version is created.
+     */
+    PutResult putIfChanged(String directory, String key, byte[] binaryContent);
+
+    /**
+     * Like {@link #put(String, String, Map, Charset)},
+     * but if the key already exists with the same content, nothing is written and no overridden version is created.
+     */
+    PutResult putIfChanged(String directory, String key, Map<String, String> propertiesContent, Charset charset);
+
+    /**
+     * Like {@link #put(String, String, Map)},
+     * but if the key already exists with the same content, nothing is written and no overridden version is created.
+     */
+    default PutResult putIfChanged(String directory, String key, Map<String, String> propertiesContent) {
+        return putIfChanged(directory, key, propertiesContent, DEFAULT_CHARSET);
+    }
+
     /**
      * Checks if the specified key exists in the directory.
      */
@@ -128,6 +201,54 @@ public interface Dms {
      */
     byte[] getBinaryContent(String directory, String key);
 
+    /**
+     * Retrieves at most {@code length} bytes of the binary content associated with the specified key,
+     * starting at the given {@code offset}.
+     * Fewer bytes are returned if the document ends earlier, an empty array if it ends before the {@code offset}.
+     */
+    byte[] getBinaryContent(String directory, String key, long offset, int length);
+
+    /**
+     * Returns a read-only view of the binary content associated with the specified key.
+     * The content is memory-mapped where possible, so only the parts actually accessed are read from the storage.
+     * Documents larger than {@link Integer#MAX_VALUE} bytes are not supported.
+     */
+    ByteBuffer mapContent(String directory, String key);
+
+    /**
+     * Opens an input stream to read the binary content associated with the specified key.
+     * The caller is responsible for closing the stream.
+     */
+    InputStream openInputStream(String directory, String key);
+
+    /**
+     * Opens a buffered reader to read the text content associated with the specified key and charset.
+     * The caller is responsible for closing the reader.
+     */
+    Reader openReader(String directory, String key, Charset charset);
+
+    /**
+     * Opens a buffered reader to read the text content associated with the specified key using the default charset (UTF-8).
+     * The caller is responsible for closing the reader.
+     */
+    default Reader openReader(String directory, String key) {
+        return openReader(directory, key, UTF_8);
+    }
+
+    /**
+     * Returns the text lines associated with the specified key and charset as a lazily populated stream.
+     * The stream holds an open file and should be closed, e.g. within a try-with-resources statement.
+     */
+    Stream<String> streamTextLines(String directory, String key, Charset charset);
+
+    /**
+     * Returns the text lines associated with the specified key using the default charset (UTF-8) as a lazily populated stream.
+     * The stream holds an open file and should be closed, e.g. within a try-with-resources statement.
+     */
+    default Stream<String> streamTextLines(String directory, String key) {
+        return streamTextLines(directory, key, UTF_8);
+    }
+
     default Map<String, String> getPropertiesContent(String directory, String key) {
         return getPropertiesContent(directory, key, DEFAULT_CHARSET);
     }
@@ -137,8 +258,88 @@ public interface Dms {
      */
     Map<String, String> getPropertiesContent(String directory, String key, Charset charset);
 
+    /**
+     * Retrieves a single value of the properties document, see {@link #getPropertiesContent(String, String, Charset)},
+     * without loading the whole map. Returns {@code null} if the document doesn't contain the property.
+     */
+    String getProperty(String directory, String key, String propertyName, Charset charset);
+
+    default String getProperty(String directory, String key, String propertyName) {
+        return getProperty(directory, key, propertyName, DEFAULT_CHARSET);
+    }
+
     LocalDateTime getLastModifiedTime(String directory, String key);
 
+    /**
+     * Retrieves the former (overridden or deleted) versions of the document with the given key, oldest first.
+     * The versions are available until they are purged.
+     */
+    List<DocumentVersion> getVersions(String directory, String key);
+
+    /**
+     * Retrieves the binary content of the former version of the document
+     * which became obsolete at the given time, see {@link #getVersions(String, String)}.
+     * If there is no such version, this method will throw an exception.
+     */
+    byte[] getVersionContent(String directory, String key, LocalDateTime obsoleteTime);
+
+    /**
+     * Returns the statistics of the content cache, {@code null} if it is disabled,
+     * see {@link DmsConfig#contentCacheMaxBytes()}.
+     */
+    ContentCacheStats getContentCacheStats();
+
+    /**
+     * Stores the given text documents, see {@link #put(String, String, String, Charset)}.
+     * The documents are written in parallel and the operation is not atomic,
+     * if it fails, some of the documents may have already been stored.
+     * Returns {@code true} for each added key and {@code false} for each updated key,
+     * in the iteration order of the given map.
+     */
+    SequencedMap<String, Boolean> putAllTextContent(String directory, Map<String, String> textContents, Charset charset);
+
+    /**
+     * Stores the given text documents using the default charset (UTF-8),
+     * see {@link #putAllTextContent(String, Map, Charset)}.
+     */
+    default SequencedMap<String, Boolean> putAllTextContent(String directory, Map<String, String> textContents) {
+        return putAllTextContent(directory, textContents, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Stores the given binary documents, see {@link #put(String, String, byte[])}.
+     * The documents are written in parallel and the operation is not atomic,
+     * if it fails, some of the documents may have already been stored.
+     * Returns {@code true} for each added key and {@code false} for each updated key,
+     * in the iteration order of the given map.
+     */
+    SequencedMap<String, Boolean> putAllBinaryContent(String directory, Map<String, byte[]> binaryContents);
+
+    /**
+     * Retrieves the text content of the given keys in parallel, in the iteration order of the keys.
+     * If any of the documents doesn't exist, this method will throw an exception.
+     */
+    SequencedMap<String, String> getAllTextContent(String directory, Collection<String> keys, Charset charset);
+
+    /**
+     * Retrieves the text content of the given keys in parallel using the default charset (UTF-8),
+     * see {@link #getAllTextContent(String, Collection, Charset)}.
+     */
+    default SequencedMap<String, String> getAllTextContent(String directory, Collection<String> keys) {
+        return getAllTextContent(directory, keys, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Retrieves the binary content of the given keys in parallel, in the iteration order of the keys.
+     * If any of the documents doesn't exist, this method will throw an exception.
+     */
+    SequencedMap<String, byte[]> getAllBinaryContent(String directory, Collection<String> keys);
+
+    /**
+     * Checks which of the given keys exist in the directory, in the iteration order of the keys.
+     */
+    SequencedMap<String, Boolean> existsAll(String directory, Collection<String> keys);
+
     /**
      * Soft-deletes the document associated with the given key.
      */
@@ -162,6 +363,21 @@ public interface Dms {
             Function<KEY, LocalDate> keyEndDateInclFnc
     );
 
+    /**
+     * Selects the fewest documents of the directory whose periods together cover the range from-to, both inclusive,
+     * and reports the gaps of the range not covered by any document.
+     * The keys are parsed like in {@link #getRedundantPeriodKeys(String, Function, Function, Function)},
+     * the raw keys mapped to {@code null} are ignored.
+     */
+    <KEY> PeriodCoverage<KEY> getCoveringPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    );
+
     /**
      * Permanently hard-deletes all obsolete(deleted or overridden) documents matching the given criteria.
      */
@@ -181,6 +397,13 @@ public interface Dms {
         return purge(directory, null, null);
     }
 
+    /**
+     * Discards any in-memory state held for the given directory (e.g. the key index),
+     * so that it is reloaded from the storage on next access.
+     * Needed only if the directory is modified by other processes.
+     */
+    void refresh(String directory);
+
     /**
      * Soft-deletes the entire workspace and initializes a new one.
      */
@@ -0,0 +1,305 @@
+package com.brinvex.util.dms.api;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Optional settings of a {@link DmsFactory}.
+ * Instances are immutable, the {@code with*} methods return a modified copy.
+ */
+public final class DmsConfig {
+
+    private static final DmsConfig DEFAULTS = new DmsConfig();
+
+    private boolean keyIndexEnabled;
+
+    private boolean obsoleteIndexEnabled;
+
+    private boolean periodIndexEnabled;
+
+    private Executor executor;
+
+    private int batchConcurrency = 32;
+
+    private int asyncConcurrency = 16;
+
+    private boolean deduplicationEnabled;
+
+    private Predicate<String> compressedDirectories;
+
+    private DmsObserver observer;
+
+    private long contentCacheMaxBytes;
+
+    private boolean contentCacheValidationEnabled;
+
+    private boolean hashedLayoutEnabled;
+
+    private boolean crossProcessLockingEnabled;
+
+    private DmsConfig() {
+    }
+
+    private DmsConfig(DmsConfig other) {
+        this.keyIndexEnabled = other.keyIndexEnabled;
+        this.obsoleteIndexEnabled = other.obsoleteIndexEnabled;
+        this.periodIndexEnabled = other.periodIndexEnabled;
+        this.executor = other.executor;
+        this.batchConcurrency = other.batchConcurrency;
+        this.asyncConcurrency = other.asyncConcurrency;
+        this.deduplicationEnabled = other.deduplicationEnabled;
+        this.compressedDirectories = other.compressedDirectories;
+        this.observer = other.observer;
+        this.contentCacheMaxBytes = other.contentCacheMaxBytes;
+        this.contentCacheValidationEnabled = other.contentCacheValidationEnabled;
+        this.hashedLayoutEnabled = other.hashedLayoutEnabled;
+        this.crossProcessLockingEnabled = other.crossProcessLockingEnabled;
+    }
+
+    public static DmsConfig defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * If enabled, the keys of each directory are loaded lazily into an in-memory sorted index
+     * which is kept current by the write operations.
+     * {@link Dms#getKeys(String)} and {@link Dms#exists(String, String)} are then served from memory.
+     * Use {@link Dms#refresh(String)} if the directory can be modified by other processes.
+     */
+    public boolean keyIndexEnabled() {
+        return keyIndexEnabled;
+    }
+
+    public DmsConfig withKeyIndexEnabled(boolean keyIndexEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.keyIndexEnabled = keyIndexEnabled;
+        return copy;
+    }
+
+    /**
+     * If enabled, the deleted and overridden versions of each directory are loaded lazily into an in-memory index
+     * which is kept current by the write operations,
+     * so {@link Dms#purge(String, String, LocalDateTime)} visits only the matching files.
+     * Use {@link Dms#refresh(String)} if the directory can be modified by other processes.
+     */
+    public boolean obsoleteIndexEnabled() {
+        return obsoleteIndexEnabled;
+    }
+
+    public DmsConfig withObsoleteIndexEnabled(boolean obsoleteIndexEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.obsoleteIndexEnabled = obsoleteIndexEnabled;
+        return copy;
+    }
+
+    /**
+     * If enabled, the periods of the keys are indexed on the first {@link Dms#getRedundantPeriodKeys(String, Function, Function, Function)}
+     * of a directory and kept current by the write operations,
+     * so the next calls with the functions of the same classes neither parse nor sort the keys again.
+     * Use {@link Dms#refresh(String)} if the directory can be modified by other processes.
+     */
+    public boolean periodIndexEnabled() {
+        return periodIndexEnabled;
+    }
+
+    public DmsConfig withPeriodIndexEnabled(boolean periodIndexEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.periodIndexEnabled = periodIndexEnabled;
+        return copy;
+    }
+
+    /**
+     * The executor used to fan out the per-document I/O of the batch operations,
+     * e.g. {@link Dms#putAllBinaryContent(String, java.util.Map)}.
+     * The same executor runs the operations of {@link AsyncDms},
+     * which split the batch operations into one operation per document instead of waiting for the per-document tasks.
+     * If {@code null}, every task runs in a new virtual thread.
+     */
+    public Executor executor() {
+        return executor;
+    }
+
+    public DmsConfig withExecutor(Executor executor) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.executor = executor;
+        return copy;
+    }
+
+    /**
+     * The maximum number of documents one batch operation reads or writes at the same time,
+     * which bounds its open files regardless of the size of the batch. Defaults to 32.
+     */
+    public int batchConcurrency() {
+        return batchConcurrency;
+    }
+
+    public DmsConfig withBatchConcurrency(int batchConcurrency) {
+        if (batchConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid batchConcurrency: %s".formatted(batchConcurrency));
+        }
+        DmsConfig copy = new DmsConfig(this);
+        copy.batchConcurrency = batchConcurrency;
+        return copy;
+    }
+
+    /**
+     * The maximum number of {@link AsyncDms} operations running concurrently against one workspace,
+     * to avoid over-subscribing the storage. Defaults to 16.
+     */
+    public int asyncConcurrency() {
+        return asyncConcurrency;
+    }
+
+    public DmsConfig withAsyncConcurrency(int asyncConcurrency) {
+        if (asyncConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid asyncConcurrency: %s".formatted(asyncConcurrency));
+        }
+        DmsConfig copy = new DmsConfig(this);
+        copy.asyncConcurrency = asyncConcurrency;
+        return copy;
+    }
+
+    /**
+     * If enabled, each distinct content is stored only once, in a content-addressed blob store shared by all workspaces,
+     * and the documents, including their overridden and deleted versions, are hard links to the blobs.
+     * A blob is hard-deleted by {@link Dms#purge} or {@link Dms#purgeWorkspace} together with its last document,
+     * and {@link Dms#purgeWorkspace} also collects the blobs left unreferenced, e.g. by a crash.
+     * Documents sharing a blob also share the file metadata, so {@link Dms#getLastModifiedTime} is not supported.
+     * Requires a filesystem supporting hard links, unix and user-defined attributes.
+     */
+    public boolean deduplicationEnabled() {
+        return deduplicationEnabled;
+    }
+
+    public DmsConfig withDeduplicationEnabled(boolean deduplicationEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.deduplicationEnabled = deduplicationEnabled;
+        return copy;
+    }
+
+    /**
+     * Selects the directories whose documents are stored compressed (Deflate),
+     * e.g. {@code directory -> true} to compress all of them. If {@code null}, nothing is compressed.
+     * The readers decompress the documents of the selected directories transparently, also the ones stored
+     * before the directory was selected, while the documents of the other directories are read as they are,
+     * even if they start like a compressed content. So the selection may only widen:
+     * a directory must stay selected as long as it holds compressed documents. Keys are not affected.
+     */
+    public Predicate<String> compressedDirectories() {
+        return compressedDirectories;
+    }
+
+    public DmsConfig withCompressedDirectories(Predicate<String> compressedDirectories) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.compressedDirectories = compressedDirectories;
+        return copy;
+    }
+
+    /**
+     * Receives an event after each completed {@link Dms} operation, e.g. a {@link HistogramDmsObserver}.
+     * If {@code null}, no events are created.
+     */
+    public DmsObserver observer() {
+        return observer;
+    }
+
+    public DmsConfig withObserver(DmsObserver observer) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.observer = observer;
+        return copy;
+    }
+
+    /**
+     * The approximate memory budget of the read-through cache of the decoded document contents,
+     * e.g. {@link Dms#getPropertiesContent(String, String)}, with the least recently used documents evicted first.
+     * The contents are weighed by their estimated in-heap size, e.g. a string of non-Latin-1 text takes two bytes per character.
+     * The cached documents are invalidated by the write operations of the same {@link Dms}.
+     * If 0, the default, nothing is cached. Applies to the filesystem storage only.
+     * See {@link Dms#getContentCacheStats()}.
+     */
+    public long contentCacheMaxBytes() {
+        return contentCacheMaxBytes;
+    }
+
+    public DmsConfig withContentCacheMaxBytes(long contentCacheMaxBytes) {
+        if (contentCacheMaxBytes < 0) {
+            throw new IllegalArgumentException("Invalid contentCacheMaxBytes: %s".formatted(contentCacheMaxBytes));
+        }
+        DmsConfig copy = new DmsConfig(this);
+        copy.contentCacheMaxBytes = contentCacheMaxBytes;
+        return copy;
+    }
+
+    /**
+     * If enabled, a cached document is served only while the size and the last-modified time of its file stay the same,
+     * which costs a stat per read but detects the changes made by other processes.
+     */
+    public boolean contentCacheValidationEnabled() {
+        return contentCacheValidationEnabled;
+    }
+
+    public DmsConfig withContentCacheValidationEnabled(boolean contentCacheValidationEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.contentCacheValidationEnabled = contentCacheValidationEnabled;
+        return copy;
+    }
+
+    /**
+     * If enabled, the files of each directory, including the deleted and overridden versions,
+     * are spread over up to 256 subdirectories named {@code _SHD_} and two hex digits of a hash of the key,
+     * so the filesystem directories stay small even with hundreds of thousands of documents.
+     * The names of the directories therefore must not start with {@code _SHD_}.
+     * The layout is transparent to the {@link Dms} API, but it is a property of the stored workspace:
+     * convert the existing workspaces by {@code FilesystemLayoutMigration} before enabling or disabling it.
+     * Applies to the filesystem storage only.
+     */
+    public boolean hashedLayoutEnabled() {
+        return hashedLayoutEnabled;
+    }
+
+    public DmsConfig withHashedLayoutEnabled(boolean hashedLayoutEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.hashedLayoutEnabled = hashedLayoutEnabled;
+        return copy;
+    }
+
+    /**
+     * If enabled, the writes of a document and the reads of its content hold also a lock of its directory,
+     * taken by {@link java.nio.channels.FileChannel#lock} on a lock file next to the workspaces,
+     * so several processes can share a workspace: the writes to a directory are serialized
+     * and a read never sees a half-written document. Different directories are locked in parallel,
+     * unless they share one of the 64 lock files of the workspace.
+     * The listings, the in-memory indexes and the reset of the workspace are not coordinated across processes.
+     * Applies to the filesystem storage only.
+     */
+    public boolean crossProcessLockingEnabled() {
+        return crossProcessLockingEnabled;
+    }
+
+    public DmsConfig withCrossProcessLockingEnabled(boolean crossProcessLockingEnabled) {
+        DmsConfig copy = new DmsConfig(this);
+        copy.crossProcessLockingEnabled = crossProcessLockingEnabled;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "DmsConfig{" +
+               "keyIndexEnabled=" + keyIndexEnabled +
+               ", obsoleteIndexEnabled=" + obsoleteIndexEnabled +
+               ", periodIndexEnabled=" + periodIndexEnabled +
+               ", executor=" + executor +
+               ", batchConcurrency=" + batchConcurrency +
+               ", asyncConcurrency=" + asyncConcurrency +
+               ", deduplicationEnabled=" + deduplicationEnabled +
+               ", compressedDirectories=" + compressedDirectories +
+               ", observer=" + observer +
+               ", contentCacheMaxBytes=" + contentCacheMaxBytes +
+               ", contentCacheValidationEnabled=" + contentCacheValidationEnabled +
+               ", hashedLayoutEnabled=" + hashedLayoutEnabled +
+               ", crossProcessLockingEnabled=" + crossProcessLockingEnabled +
+               '}';
+    }
+}
@@ -7,12 +7,37 @@ public interface DmsFactory {
 
     Dms getDms(String workspace);
 
+    /**
+     * Returns the asynchronous counterpart of {@link #getDms(String)} for the same workspace.
+     */
+    AsyncDms getAsyncDms(String workspace);
+
     static DmsFactory newFilesystemDmsFactory(Path basePath) {
-        String factoryImplClassName = "com.brinvex.util.dms.impl.FilesystemDmsFactoryImpl";
+        return newFilesystemDmsFactory(basePath, DmsConfig.defaults());
+    }
+
+    static DmsFactory newFilesystemDmsFactory(Path basePath, DmsConfig config) {
+        return newDmsFactory("com.brinvex.util.dms.impl.FilesystemDmsFactoryImpl", basePath, config);
+    }
+
+    /**
+     * Returns a factory of {@link Dms} instances storing the documents of each directory
+     * in a few append-only segment files instead of one file per document.
+     * Suited for directories with many small documents.
+     */
+    static DmsFactory newSegmentDmsFactory(Path basePath) {
+        return newSegmentDmsFactory(basePath, DmsConfig.defaults());
+    }
+
+    static DmsFactory newSegmentDmsFactory(Path basePath, DmsConfig config) {
+        return newDmsFactory("com.brinvex.util.dms.impl.SegmentDmsFactoryImpl", basePath, config);
+    }
+
+    private static DmsFactory newDmsFactory(String factoryImplClassName, Path basePath, DmsConfig config) {
         try {
             return (DmsFactory) Class.forName(factoryImplClassName)
-                    .getConstructor(Path.class)
-                    .newInstance(basePath);
+                    .getConstructor(Path.class, DmsConfig.class)
+                    .newInstance(basePath, config);
         } catch (ClassNotFoundException
                  | IllegalAccessException
                  | InstantiationException
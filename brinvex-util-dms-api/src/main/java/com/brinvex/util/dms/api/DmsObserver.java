@@ -0,0 +1,14 @@
+package com.brinvex.util.dms.api;
+
+/**
+ * Listener of the completed {@link Dms} operations, see {@link DmsConfig#withObserver(DmsObserver)}.
+ * <p>
+ * It is called synchronously by the thread which performed the operation, possibly by many threads at once,
+ * so implementations must be thread-safe and fast.
+ * Exceptions thrown by the observer are logged and otherwise ignored.
+ */
+@FunctionalInterface
+public interface DmsObserver {
+
+    void onOperation(DmsOperationEvent event);
+}
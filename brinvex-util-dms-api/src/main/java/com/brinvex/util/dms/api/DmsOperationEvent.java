@@ -0,0 +1,26 @@
+package com.brinvex.util.dms.api;
+
+/**
+ * A completed {@link Dms} operation.
+ *
+ * @param operation    the name of the {@link Dms} method, e.g. {@code getTextContent}
+ * @param workspace    the workspace
+ * @param directory    the directory, {@code null} for the workspace operations
+ * @param bytes        the number of bytes of the documents read or written, as stored, 0 if not applicable;
+ *                     for the streaming reads the size of the document opened
+ * @param latencyNanos the duration of the operation
+ * @param failure      the exception thrown by the operation, {@code null} if it succeeded
+ */
+public record DmsOperationEvent(
+        String operation,
+        String workspace,
+        String directory,
+        long bytes,
+        long latencyNanos,
+        Throwable failure
+) {
+
+    public boolean succeeded() {
+        return failure == null;
+    }
+}
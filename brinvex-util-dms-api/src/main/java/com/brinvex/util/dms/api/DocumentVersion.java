@@ -0,0 +1,25 @@
+package com.brinvex.util.dms.api;
+
+import java.time.LocalDateTime;
+
+/**
+ * A former version of a document, returned by {@link Dms#getVersions(String, String)}.
+ *
+ * @param obsoleteTime the time the version was overridden or deleted
+ * @param kind         whether the version was overridden or deleted
+ */
+public record DocumentVersion(LocalDateTime obsoleteTime, Kind kind) {
+
+    public enum Kind {
+
+        /**
+         * The version was replaced by a newer content of the same key.
+         */
+        OVERRIDDEN,
+
+        /**
+         * The version was soft-deleted.
+         */
+        DELETED
+    }
+}
@@ -0,0 +1,73 @@
+package com.brinvex.util.dms.api;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link DmsObserver} aggregating the events per operation, workspace and directory
+ * into {@link LatencyHistogram}s and byte and failure counters, without locking.
+ */
+public class HistogramDmsObserver implements DmsObserver {
+
+    public record Key(String operation, String workspace, String directory) {
+    }
+
+    public static final class Stats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+
+        public long bytes() {
+            return bytes.sum();
+        }
+
+        public long failures() {
+            return failures.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                   "latency=" + latency +
+                   ", bytes=" + bytes() +
+                   ", failures=" + failures() +
+                   '}';
+        }
+    }
+
+    private final Map<Key, Stats> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void onOperation(DmsOperationEvent event) {
+        Key key = new Key(event.operation(), event.workspace(), event.directory());
+        Stats operationStats = stats.get(key);
+        if (operationStats == null) {
+            operationStats = stats.computeIfAbsent(key, k -> new Stats());
+        }
+        operationStats.latency.record(event.latencyNanos());
+        operationStats.bytes.add(event.bytes());
+        if (!event.succeeded()) {
+            operationStats.failures.increment();
+        }
+    }
+
+    /**
+     * Returns a live, unmodifiable view of the statistics collected so far.
+     */
+    public Map<Key, Stats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public Stats getStats(String operation, String workspace, String directory) {
+        return stats.get(new Key(operation, workspace, directory));
+    }
+}
@@ -0,0 +1,132 @@
+package com.brinvex.util.dms.api;
+
+/**
+ * Selects a page of the keys of a directory, see {@link Dms#getKeys(String, KeyQuery)}.
+ * The criteria are combined, e.g. a prefix within a range, and compare the keys as strings.
+ * Instances are immutable, the {@code with*} methods return a modified copy.
+ * <p>
+ * To page through the keys, pass the last key of a page as the cursor of the next one:
+ * {@code query.withAfter(page.getLast())}.
+ */
+public final class KeyQuery {
+
+    private static final KeyQuery ALL = new KeyQuery();
+
+    private String prefix;
+
+    private String from;
+
+    private String to;
+
+    private String after;
+
+    private int limit = Integer.MAX_VALUE;
+
+    private KeyQuery() {
+    }
+
+    private KeyQuery(KeyQuery other) {
+        this.prefix = other.prefix;
+        this.from = other.from;
+        this.to = other.to;
+        this.after = other.after;
+        this.limit = other.limit;
+    }
+
+    public static KeyQuery all() {
+        return ALL;
+    }
+
+    public static KeyQuery prefix(String prefix) {
+        return ALL.withPrefix(prefix);
+    }
+
+    /**
+     * Only the keys starting with the prefix. If {@code null}, any key.
+     */
+    public String prefix() {
+        return prefix;
+    }
+
+    public KeyQuery withPrefix(String prefix) {
+        KeyQuery copy = new KeyQuery(this);
+        copy.prefix = prefix;
+        return copy;
+    }
+
+    /**
+     * The lower bound of the keys, inclusive. If {@code null}, unbounded.
+     */
+    public String from() {
+        return from;
+    }
+
+    public KeyQuery withFrom(String from) {
+        KeyQuery copy = new KeyQuery(this);
+        copy.from = from;
+        return copy;
+    }
+
+    /**
+     * The upper bound of the keys, exclusive. If {@code null}, unbounded.
+     */
+    public String to() {
+        return to;
+    }
+
+    public KeyQuery withTo(String to) {
+        KeyQuery copy = new KeyQuery(this);
+        copy.to = to;
+        return copy;
+    }
+
+    /**
+     * The cursor, only the keys after it are selected. If {@code null}, from the first key.
+     */
+    public String after() {
+        return after;
+    }
+
+    public KeyQuery withAfter(String after) {
+        KeyQuery copy = new KeyQuery(this);
+        copy.after = after;
+        return copy;
+    }
+
+    /**
+     * The maximum number of keys, the lowest ones are selected. Unlimited by default.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    public KeyQuery withLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit: %s".formatted(limit));
+        }
+        KeyQuery copy = new KeyQuery(this);
+        copy.limit = limit;
+        return copy;
+    }
+
+    /**
+     * Tests the key against the prefix, the range and the cursor, not the limit.
+     */
+    public boolean matches(String key) {
+        return (prefix == null || key.startsWith(prefix))
+               && (from == null || key.compareTo(from) >= 0)
+               && (to == null || key.compareTo(to) < 0)
+               && (after == null || key.compareTo(after) > 0);
+    }
+
+    @Override
+    public String toString() {
+        return "KeyQuery{" +
+               "prefix=" + prefix +
+               ", from=" + from +
+               ", to=" + to +
+               ", after=" + after +
+               ", limit=" + limit +
+               '}';
+    }
+}
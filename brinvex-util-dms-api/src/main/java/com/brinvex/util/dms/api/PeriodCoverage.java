@@ -0,0 +1,26 @@
+package com.brinvex.util.dms.api;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SequencedMap;
+
+/**
+ * The documents covering a date range, returned by
+ * {@link Dms#getCoveringPeriodKeys(String, java.util.function.Function, java.util.function.Function, java.util.function.Function, LocalDate, LocalDate)}.
+ *
+ * @param keys the fewest keys whose periods together cover the range as far as possible, mapped to the raw keys,
+ *             ordered by the start of the period
+ * @param gaps the parts of the range not covered by any document, in chronological order
+ */
+public record PeriodCoverage<KEY>(SequencedMap<KEY, String> keys, List<Gap> gaps) {
+
+    /**
+     * A date range not covered by any document, both dates inclusive.
+     */
+    public record Gap(LocalDate startDateIncl, LocalDate endDateIncl) {
+    }
+
+    public boolean isComplete() {
+        return gaps.isEmpty();
+    }
+}
@@ -0,0 +1,22 @@
+package com.brinvex.util.dms.api;
+
+/**
+ * The outcome of {@link Dms#putIfChanged}.
+ */
+public enum PutResult {
+
+    /**
+     * The key did not exist, the document was added.
+     */
+    ADDED,
+
+    /**
+     * The key existed with a different content, the document was updated.
+     */
+    UPDATED,
+
+    /**
+     * The key existed with the same content, nothing was written.
+     */
+    UNCHANGED
+}
@@ -0,0 +1,295 @@
+package com.brinvex.util.dms.bench;
+
+import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DmsFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SequencedCollection;
+import java.util.SequencedMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of the {@link Dms} operations on a workspace in a temp directory.
+ * <p>
+ * The documents directory holds {@code directoryCardinality} documents.
+ * The first {@link #HOT_KEY_COUNT} of them (the hot keys) have {@code documentSize} bytes of text lines
+ * and are the ones read and overridden, the rest are small fillers,
+ * so that the directory cardinality can grow without multiplying the data volume.
+ * <p>
+ * The thread count is set by the JMH {@code -t} option, {@link DmsBenchmarkRunner} runs a series of them
+ * and writes the results as JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DmsBenchmark {
+
+    static final int HOT_KEY_COUNT = 256;
+
+    private static final int FILLER_SIZE = 64;
+
+    private static final String DIRECTORY = "docs";
+
+    private static final String PROPERTIES_DIRECTORY = "props";
+
+    private static final String PERIOD_DIRECTORY = "periods";
+
+    private static final String WORKSPACE = "bench";
+
+    @Param({"filesystem", "segment"})
+    private String engine;
+
+    @Param({"1024", "65536", "1048576"})
+    private int documentSize;
+
+    @Param({"100", "10000"})
+    private int directoryCardinality;
+
+    private Path basePath;
+
+    private Dms dms;
+
+    private String[] hotKeys;
+
+    private String content;
+
+    private byte[] binaryContent;
+
+    private Map<String, String> propertiesContent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        basePath = Files.createTempDirectory("dms-bench");
+        DmsFactory dmsFactory = switch (engine) {
+            case "filesystem" -> DmsFactory.newFilesystemDmsFactory(basePath);
+            case "segment" -> DmsFactory.newSegmentDmsFactory(basePath);
+            default -> throw new IllegalArgumentException("Unknown engine: %s".formatted(engine));
+        };
+        dms = dmsFactory.getDms(WORKSPACE);
+
+        content = textLines(documentSize);
+        binaryContent = content.getBytes(StandardCharsets.UTF_8);
+        String fillerContent = textLines(FILLER_SIZE);
+        hotKeys = new String[Math.min(HOT_KEY_COUNT, directoryCardinality)];
+        for (int i = 0; i < directoryCardinality; i++) {
+            String key = "doc_%08d.txt".formatted(i);
+            if (i < hotKeys.length) {
+                hotKeys[i] = key;
+                dms.add(DIRECTORY, key, content);
+            } else {
+                dms.add(DIRECTORY, key, fillerContent);
+            }
+        }
+
+        propertiesContent = new LinkedHashMap<>();
+        for (int i = 0, n = Math.max(1, documentSize / 32); i < n; i++) {
+            propertiesContent.put("property.%06d".formatted(i), "value_%06d".formatted(i));
+        }
+        for (String hotKey : hotKeys) {
+            dms.put(PROPERTIES_DIRECTORY, hotKey, propertiesContent);
+        }
+
+        Random random = new Random(42);
+        LocalDate baseDate = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < directoryCardinality; i++) {
+            LocalDate startDate = baseDate.plusDays(random.nextInt(5 * 365));
+            LocalDate endDate = startDate.plusDays(random.nextInt(90));
+            dms.put(PERIOD_DIRECTORY, "%s_%s_%06d.csv".formatted(startDate, endDate, i), fillerContent);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(basePath)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static String textLines(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("%08d;2024-01-01;some text of the line;12345.67\n".formatted(i));
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+
+    private String randomHotKey() {
+        return hotKeys[ThreadLocalRandom.current().nextInt(hotKeys.length)];
+    }
+
+    /**
+     * The keys written by one thread: new keys not used by any other thread
+     * and a share of the hot keys no other thread overrides.
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        private String newKeyPrefix;
+        private int newKeyCounter;
+        private String[] ownHotKeys;
+
+        @Setup(Level.Trial)
+        public void setUp(DmsBenchmark benchmark, ThreadParams threadParams) {
+            int threadIndex = threadParams.getThreadIndex();
+            int threadCount = threadParams.getThreadCount();
+            newKeyPrefix = "new_%03d_".formatted(threadIndex);
+            ownHotKeys = IntStream.range(0, benchmark.hotKeys.length)
+                    .filter(i -> i % threadCount == threadIndex)
+                    .mapToObj(i -> benchmark.hotKeys[i])
+                    .toArray(String[]::new);
+            if (ownHotKeys.length == 0) {
+                throw new IllegalStateException("More threads than hot keys: %s".formatted(threadCount));
+            }
+        }
+
+        String nextNewKey() {
+            return newKeyPrefix + newKeyCounter++;
+        }
+
+        String randomOwnHotKey() {
+            return ownHotKeys[ThreadLocalRandom.current().nextInt(ownHotKeys.length)];
+        }
+    }
+
+    @Benchmark
+    public void add(ThreadKeys threadKeys) {
+        dms.add(DIRECTORY, threadKeys.nextNewKey(), content);
+    }
+
+    @Benchmark
+    public boolean putNew(ThreadKeys threadKeys) {
+        return dms.put(DIRECTORY, threadKeys.nextNewKey(), content);
+    }
+
+    @Benchmark
+    public boolean putOverride(ThreadKeys threadKeys) {
+        return dms.put(DIRECTORY, threadKeys.randomOwnHotKey(), content);
+    }
+
+    @Benchmark
+    public String getTextContent() {
+        return dms.getTextContent(DIRECTORY, randomHotKey());
+    }
+
+    @Benchmark
+    public byte[] getBinaryContent() {
+        return dms.getBinaryContent(DIRECTORY, randomHotKey());
+    }
+
+    @Benchmark
+    public List<String> getTextLinesLimit() {
+        return dms.getTextLines(DIRECTORY, randomHotKey(), 10);
+    }
+
+    @Benchmark
+    public Map<String, String> getPropertiesContent() {
+        return dms.getPropertiesContent(PROPERTIES_DIRECTORY, randomHotKey());
+    }
+
+    @Benchmark
+    public SequencedCollection<String> getKeys() {
+        return dms.getKeys(DIRECTORY);
+    }
+
+    @Benchmark
+    public SequencedMap<String, String> getRedundantPeriodKeys() {
+        return dms.getRedundantPeriodKeys(
+                PERIOD_DIRECTORY,
+                key -> key,
+                key -> LocalDate.parse(key.substring(0, 10)),
+                key -> LocalDate.parse(key.substring(11, 21))
+        );
+    }
+
+    /**
+     * Documents to delete, added before each measured batch.
+     */
+    @State(Scope.Thread)
+    public static class DeletableKeys {
+        static final int BATCH_SIZE = 200;
+        private String[] keys;
+        private int next;
+
+        @Setup(Level.Iteration)
+        public void setUp(DmsBenchmark benchmark, ThreadKeys threadKeys) {
+            keys = new String[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                keys[i] = threadKeys.nextNewKey();
+                benchmark.dms.add(DIRECTORY, keys[i], benchmark.binaryContent);
+            }
+            next = 0;
+        }
+    }
+
+    /**
+     * Measures the time of deleting a batch of {@link DeletableKeys#BATCH_SIZE} documents.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = DeletableKeys.BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = DeletableKeys.BATCH_SIZE)
+    public void delete(DeletableKeys deletableKeys) {
+        dms.delete(DIRECTORY, deletableKeys.keys[deletableKeys.next++]);
+    }
+
+    /**
+     * Obsolete versions to purge, created before each measured purge: one per own hot key of the thread.
+     */
+    @State(Scope.Thread)
+    public static class PurgeableVersions {
+        @Setup(Level.Iteration)
+        public void setUp(DmsBenchmark benchmark, ThreadKeys threadKeys) {
+            for (String hotKey : threadKeys.ownHotKeys) {
+                benchmark.dms.put(DIRECTORY, hotKey, benchmark.binaryContent);
+            }
+        }
+    }
+
+    /**
+     * Measures the time of purging the obsolete versions of the hot keys from the directory.
+     * With more threads, the purges run concurrently and each purges whatever the others have not yet.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public int purge(PurgeableVersions purgeableVersions) {
+        return dms.purge(DIRECTORY);
+    }
+}
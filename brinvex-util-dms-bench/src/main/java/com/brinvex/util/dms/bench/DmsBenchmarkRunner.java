@@ -0,0 +1,62 @@
+package com.brinvex.util.dms.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Runs {@link DmsBenchmark} once per thread count and writes the results of each run
+ * as JSON to {@code <outputDir>/dms-benchmark-<threads>t.json}, so that they can be compared between builds,
+ * e.g. by the JMH Visualizer or a simple script.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar com.brinvex.util.dms.bench.DmsBenchmarkRunner [outputDir] [threadCount...] [-- jmh options]},
+ * e.g. {@code target/jmh-results 1 8 -- "DmsBenchmark.get.*" -p engine=filesystem}.
+ * Defaults: {@code target/jmh-results 1 4 16}.
+ */
+public class DmsBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, IOException, CommandLineOptionException {
+        int separator = indexOf(args, "--");
+        String[] runnerArgs = separator < 0 ? args : Arrays.copyOfRange(args, 0, separator);
+        String[] jmhArgs = separator < 0 ? new String[0] : Arrays.copyOfRange(args, separator + 1, args.length);
+
+        Path outputDir = Path.of(runnerArgs.length > 0 ? runnerArgs[0] : "target/jmh-results");
+        int[] threadCounts = runnerArgs.length > 1
+                ? Arrays.stream(runnerArgs, 1, runnerArgs.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 4, 16};
+        Files.createDirectories(outputDir);
+
+        CommandLineOptions commandLineOptions = new CommandLineOptions(jmhArgs);
+        for (int threadCount : threadCounts) {
+            OptionsBuilder optionsBuilder = new OptionsBuilder();
+            if (commandLineOptions.getIncludes().isEmpty()) {
+                optionsBuilder.include(DmsBenchmark.class.getName());
+            }
+            Options options = optionsBuilder
+                    .parent(commandLineOptions)
+                    .threads(threadCount)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(outputDir.resolve("dms-benchmark-%dt.json".formatted(threadCount)).toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    private static int indexOf(String[] args, String arg) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(arg)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
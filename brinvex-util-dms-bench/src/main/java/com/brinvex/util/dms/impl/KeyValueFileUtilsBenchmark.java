@@ -0,0 +1,126 @@
+package com.brinvex.util.dms.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encoding and decoding of properties documents by {@link KeyValueFileUtils}
+ * compared to the former {@link BufferedReader} and {@link String#split} based implementation.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyValueFileUtilsBenchmark {
+
+    @Param({"100", "10000"})
+    private int entryCount;
+
+    private Map<String, String> properties;
+
+    private byte[] content;
+
+    private String lastKey;
+
+    @Setup
+    public void setUp() {
+        properties = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            properties.put("fee.%06d.rate".formatted(i), "0.%04d;EUR;2024-01-01".formatted(i));
+        }
+        content = KeyValueFileUtils.writeMapToBytes(properties, UTF_8);
+        lastKey = "fee.%06d.rate".formatted(entryCount - 1);
+    }
+
+    @Benchmark
+    public Map<String, String> readMap() {
+        return KeyValueFileUtils.readMap(ByteBuffer.wrap(content), UTF_8);
+    }
+
+    @Benchmark
+    public Map<String, String> readMapLegacy() throws IOException {
+        return LegacyKeyValueFileUtils.readMap(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), UTF_8)));
+    }
+
+    @Benchmark
+    public String readValue() {
+        return KeyValueFileUtils.readValue(ByteBuffer.wrap(content), UTF_8, lastKey);
+    }
+
+    @Benchmark
+    public String readValueLegacy() throws IOException {
+        return readMapLegacy().get(lastKey);
+    }
+
+    @Benchmark
+    public byte[] writeMap() {
+        return KeyValueFileUtils.writeMapToBytes(properties, UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writeMapLegacy() throws IOException {
+        return LegacyKeyValueFileUtils.writeMapToBytes(properties, UTF_8);
+    }
+
+    /**
+     * The former implementation, kept as the baseline.
+     */
+    private static class LegacyKeyValueFileUtils {
+
+        static byte[] writeMapToBytes(Map<String, String> map, Charset charset) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue());
+                writer.newLine();
+            }
+            writer.flush();
+            return out.toByteArray();
+        }
+
+        static Map<String, String> readMap(BufferedReader reader) throws IOException {
+            Map<String, String> map = new LinkedHashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("=", 2);
+                if (parts.length >= 2) {
+                    map.put(parts[0], parts[1]);
+                } else {
+                    throw new IllegalStateException("Invalid line: " + line);
+                }
+            }
+            return map;
+        }
+    }
+}
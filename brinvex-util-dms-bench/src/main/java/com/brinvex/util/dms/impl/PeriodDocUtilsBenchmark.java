@@ -0,0 +1,211 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.PeriodCoverage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SequencedMap;
+import java.util.SequencedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.Collections.emptySortedSet;
+import static java.util.Comparator.comparing;
+
+/**
+ * Period document queries of {@link PeriodDocUtils} over daily, monthly and yearly keys parsed from their names,
+ * compared to {@link LocalDate} based implementations sorting by a comparator of the key functions.
+ * <p>
+ * The legacy variants at one million keys take seconds per operation,
+ * select the size with {@code -p keyCount=...} for a quick run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeriodDocUtilsBenchmark {
+
+    private static final Function<String, LocalDate> START_FNC = key -> switch (key.length()) {
+        case 4 -> Year.parse(key).atDay(1);
+        case 7 -> YearMonth.parse(key).atDay(1);
+        default -> LocalDate.parse(key);
+    };
+
+    private static final Function<String, LocalDate> END_FNC = key -> switch (key.length()) {
+        case 4 -> Year.parse(key).atMonth(12).atEndOfMonth();
+        case 7 -> YearMonth.parse(key).atEndOfMonth();
+        default -> LocalDate.parse(key);
+    };
+
+    private static final LocalDate FROM = LocalDate.of(1000, 1, 1);
+
+    private static final LocalDate TO = LocalDate.of(4999, 12, 31);
+
+    @Param({"100000", "1000000"})
+    private int keyCount;
+
+    private SequencedMap<String, String> keyToRawKey;
+
+    private long[] sortedStartDays;
+
+    private long[] sortedEndDays;
+
+    /**
+     * Unique keys in a random order: 80% days, 15% months and 5% years.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        keyToRawKey = new LinkedHashMap<>();
+        long fromDay = FROM.toEpochDay();
+        int dayCount = (int) (TO.toEpochDay() - fromDay + 1);
+        while (keyToRawKey.size() < keyCount) {
+            LocalDate date = LocalDate.ofEpochDay(fromDay + random.nextInt(dayCount));
+            int type = random.nextInt(100);
+            String key = type < 80 ? date.toString() : type < 95 ? YearMonth.from(date).toString() : Year.from(date).toString();
+            keyToRawKey.put(key, key);
+        }
+        TreeSet<String> sortedKeys = new TreeSet<>(comparing(START_FNC).thenComparing(END_FNC).thenComparing(Function.identity()));
+        sortedKeys.addAll(keyToRawKey.keySet());
+        sortedStartDays = sortedKeys.stream().mapToLong(key -> START_FNC.apply(key).toEpochDay()).toArray();
+        sortedEndDays = sortedKeys.stream().mapToLong(key -> END_FNC.apply(key).toEpochDay()).toArray();
+    }
+
+    /**
+     * Projects each key once, sorts the packed periods and sweeps, like a query without the period index.
+     */
+    @Benchmark
+    public PeriodCoverage<String> coveringKeys() {
+        return PeriodDocUtils.findCoveringKeys(keyToRawKey, START_FNC, END_FNC, FROM, TO);
+    }
+
+    /**
+     * Only the sweep over the already sorted periods, like a query served by the period index.
+     */
+    @Benchmark
+    public PeriodDocUtils.Covering coveringKeysIndexed() {
+        return PeriodDocUtils.findCovering(sortedStartDays, sortedEndDays, null, FROM.toEpochDay(), TO.toEpochDay());
+    }
+
+    @Benchmark
+    public List<String> coveringKeysLegacy() {
+        return LegacyPeriodDocUtils.findCoveringKeys(keyToRawKey.keySet(), START_FNC, END_FNC, FROM, TO);
+    }
+
+    @Benchmark
+    public SequencedSet<String> redundantKeys() {
+        return PeriodDocUtils.findRedundantKeys(keyToRawKey.keySet(), START_FNC, END_FNC);
+    }
+
+    @Benchmark
+    public SequencedSet<String> redundantKeysLegacy() {
+        return LegacyPeriodDocUtils.findRedundantKeys(keyToRawKey.keySet(), START_FNC, END_FNC);
+    }
+
+    /**
+     * Implementations calling the key functions in the comparator and in the loop, kept as the baseline.
+     * The redundancy is the former {@link PeriodDocUtils#findRedundantKeys}.
+     */
+    private static class LegacyPeriodDocUtils {
+
+        static <KEY> SequencedSet<KEY> findRedundantKeys(Collection<KEY> keys, Function<KEY, LocalDate> keyStartDateInclFnc, Function<KEY, LocalDate> keyEndDateInclFnc) {
+            int size = keys.size();
+            if (size <= 1) {
+                return emptySortedSet();
+            }
+            List<KEY> sortedKeys = keys.stream().sorted(comparing(keyStartDateInclFnc).thenComparing(keyEndDateInclFnc)).toList();
+            SequencedSet<KEY> uselessKeys = new LinkedHashSet<>();
+            int prevUsefulIndex = 0;
+            for (int i = 0; i < size; i++) {
+                KEY midKey = sortedKeys.get(i);
+                boolean useful;
+                if (i == 0) {
+                    KEY nextKey = sortedKeys.get(i + 1);
+                    useful = keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(nextKey));
+                } else if (i == size - 1) {
+                    KEY prevKey = sortedKeys.get(prevUsefulIndex);
+                    useful = keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(prevKey));
+                } else {
+                    KEY prevKey = sortedKeys.get(prevUsefulIndex);
+                    KEY nextKey = sortedKeys.get(i + 1);
+                    LocalDate prevEndDateExcl = keyEndDateInclFnc.apply(prevKey).plusDays(1);
+                    LocalDate nextStartDateIncl = keyStartDateInclFnc.apply(nextKey);
+                    boolean neighborsContinuous = !prevEndDateExcl.isBefore(nextStartDateIncl);
+                    if (neighborsContinuous) {
+                        boolean inside = !keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(prevKey))
+                                         && !keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(nextKey));
+                        useful = !inside;
+                    } else {
+                        boolean insidePrev = !keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(prevKey))
+                                             && !keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(prevKey));
+                        boolean insideNext = !keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(nextKey))
+                                             && !keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(nextKey));
+                        useful = !insidePrev && !insideNext;
+                    }
+                }
+                if (!useful) {
+                    uselessKeys.add(midKey);
+                } else {
+                    prevUsefulIndex = i;
+                }
+            }
+            return uselessKeys;
+        }
+
+        static List<String> findCoveringKeys(
+                Iterable<String> keys,
+                Function<String, LocalDate> startFnc,
+                Function<String, LocalDate> endFnc,
+                LocalDate from,
+                LocalDate to
+        ) {
+            List<String> sortedKeys = new ArrayList<>();
+            keys.forEach(sortedKeys::add);
+            sortedKeys.sort(comparing(startFnc).thenComparing(endFnc));
+            List<String> result = new ArrayList<>();
+            LocalDate uncovered = from;
+            int next = 0;
+            while (!uncovered.isAfter(to)) {
+                String best = null;
+                LocalDate bestEnd = uncovered.minusDays(1);
+                while (next < sortedKeys.size() && !startFnc.apply(sortedKeys.get(next)).isAfter(uncovered)) {
+                    if (endFnc.apply(sortedKeys.get(next)).isAfter(bestEnd)) {
+                        best = sortedKeys.get(next);
+                        bestEnd = endFnc.apply(best);
+                    }
+                    next++;
+                }
+                if (best != null) {
+                    result.add(best);
+                    uncovered = bestEnd.plusDays(1);
+                } else if (next < sortedKeys.size()) {
+                    uncovered = startFnc.apply(sortedKeys.get(next));
+                } else {
+                    break;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.brinvex.util.dms.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classification of directory listings by {@link SoftDeleteHelper}
+ * compared to the former substring, regex and {@link DateTimeFormatter} based implementation.
+ * <p>
+ * Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoftDeleteHelperBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int filenameCount;
+
+    private String[] filenames;
+
+    private String origKey;
+
+    private LocalDateTime obsoleteBefore;
+
+    /**
+     * Every third file is a live document, the others are deleted or overridden versions, some with a sequence.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        filenames = new String[filenameCount];
+        for (int i = 0; i < filenameCount; i++) {
+            String key = "statement_%06d.csv".formatted(random.nextInt(filenameCount / 10 + 1));
+            Path path = Path.of("dir", key);
+            LocalDateTime versionTime = start.plusSeconds(random.nextInt(365 * 24 * 3600)).plusNanos(i % 7 == 0 ? i % 1000 : 0);
+            filenames[i] = switch (i % 3) {
+                case 0 -> key;
+                case 1 -> SoftDeleteHelper.contructSoftDeletedPath(path, versionTime).getFileName().toString();
+                default -> SoftDeleteHelper.contructOverriddenPath(path, versionTime).getFileName().toString();
+            };
+        }
+        origKey = "statement_000001.csv";
+        obsoleteBefore = start.plusDays(180);
+    }
+
+    @Benchmark
+    public int isObsolete() {
+        int count = 0;
+        for (String filename : filenames) {
+            if (SoftDeleteHelper.isObsolete(filename)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int isObsoleteLegacy() {
+        int count = 0;
+        for (String filename : filenames) {
+            if (LegacySoftDeleteHelper.isObsolete(filename)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int isObsoleteBefore() {
+        int count = 0;
+        for (String filename : filenames) {
+            if (SoftDeleteHelper.isObsolete(filename, null, obsoleteBefore)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int isObsoleteBeforeLegacy() {
+        int count = 0;
+        for (String filename : filenames) {
+            if (LegacySoftDeleteHelper.isObsolete(filename, null, obsoleteBefore)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int isObsoleteKey() {
+        int count = 0;
+        for (String filename : filenames) {
+            if (SoftDeleteHelper.isObsolete(filename, origKey, obsoleteBefore)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int isObsoleteKeyLegacy() {
+        int count = 0;
+        for (String filename : filenames) {
+            if (LegacySoftDeleteHelper.isObsolete(filename, origKey, obsoleteBefore)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The former implementation, kept as the baseline. It doesn't recognize the sequence suffix.
+     */
+    private static class LegacySoftDeleteHelper {
+        private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+        private static final Pattern deletedPrefixPattern = Pattern.compile("^_DEL_(\\d{8}_\\d{6}_\\d{3})_!@#-$");
+        private static final Pattern overriddenPrefixPattern = Pattern.compile("^_OVR_(\\d{8}_\\d{6}_\\d{3})_!@#-$");
+        private static final int deletedPrefixLength = "_DEL_yyyyMMdd_HHmmss_SSS_!@#-".length();
+
+        static boolean isObsolete(String filename, String origKey, LocalDateTime obsoleteBefore) {
+            int filenameLength = filename.length();
+            if (filenameLength <= deletedPrefixLength) {
+                return false;
+            }
+            String left = filename.substring(0, deletedPrefixLength);
+            boolean result = true;
+            if (origKey != null) {
+                String right = filename.substring(deletedPrefixLength);
+                result = right.equals(origKey);
+            }
+            if (result) {
+                Matcher m;
+                if ((m = deletedPrefixPattern.matcher(left)).find()) {
+                    if (obsoleteBefore != null) {
+                        LocalDateTime delDate = LocalDateTime.parse(m.group(1), dtf);
+                        result = delDate.isBefore(obsoleteBefore);
+                    }
+                } else if ((m = overriddenPrefixPattern.matcher(left)).find()) {
+                    if (obsoleteBefore != null) {
+                        LocalDateTime ovrDate = LocalDateTime.parse(m.group(1), dtf);
+                        result = ovrDate.isBefore(obsoleteBefore);
+                    }
+                } else {
+                    result = false;
+                }
+            }
+            return result;
+        }
+
+        static boolean isObsolete(String filename) {
+            int filenameLength = filename.length();
+            if (filenameLength <= deletedPrefixLength) {
+                return false;
+            }
+            String left = filename.substring(0, deletedPrefixLength);
+            return deletedPrefixPattern.matcher(left).matches() || overriddenPrefixPattern.matcher(left).matches();
+        }
+    }
+}
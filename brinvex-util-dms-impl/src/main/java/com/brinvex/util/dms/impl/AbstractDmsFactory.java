@@ -0,0 +1,51 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.AsyncDms;
+import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DmsConfig;
+import com.brinvex.util.dms.api.DmsFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.brinvex.util.dms.impl.DmsHelper.VIRTUAL_THREAD_EXECUTOR;
+
+/**
+ * Keeps one {@link Dms} and one {@link AsyncDms} per workspace, shared by the factories of the storage engines.
+ */
+abstract class AbstractDmsFactory implements DmsFactory {
+
+    private final Path basePath;
+
+    private final DmsConfig config;
+
+    private final Map<String, Dms> workspaceToDmsService = new ConcurrentHashMap<>();
+
+    private final Map<String, AsyncDmsImpl> workspaceToAsyncDmsService = new ConcurrentHashMap<>();
+
+    AbstractDmsFactory(Path basePath, DmsConfig config) {
+        if (basePath == null || !Files.exists(basePath)) {
+            throw new IllegalArgumentException("basePath=%s does not exist".formatted(basePath));
+        }
+        this.basePath = basePath;
+        this.config = config;
+    }
+
+    abstract Dms newDms(Path basePath, String workspace, DmsConfig config);
+
+    @Override
+    public Dms getDms(String workspace) {
+        return workspaceToDmsService.computeIfAbsent(workspace, k -> newDms(basePath, workspace, config));
+    }
+
+    @Override
+    public AsyncDms getAsyncDms(String workspace) {
+        return workspaceToAsyncDmsService.computeIfAbsent(workspace, k -> new AsyncDmsImpl(
+                getDms(workspace),
+                config.executor() != null ? config.executor() : VIRTUAL_THREAD_EXECUTOR,
+                config.asyncConcurrency()
+        ));
+    }
+}
@@ -0,0 +1,307 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.AsyncDms;
+import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DocumentVersion;
+import com.brinvex.util.dms.api.KeyQuery;
+import com.brinvex.util.dms.api.PeriodCoverage;
+import com.brinvex.util.dms.api.PutResult;
+
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SequencedCollection;
+import java.util.SequencedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.brinvex.util.dms.impl.DmsHelper.joinAll;
+
+/**
+ * Runs the blocking {@link Dms} operations on the given executor,
+ * letting at most {@code concurrency} of them access the storage at the same time.
+ * The batch operations run as one operation per document,
+ * so they take a permit per document and never block a thread of the executor waiting for other tasks.
+ */
+public class AsyncDmsImpl implements AsyncDms {
+
+    private final Dms dms;
+
+    private final Executor executor;
+
+    private final Semaphore permits;
+
+    public AsyncDmsImpl(Dms dms, Executor executor, int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Invalid concurrency: %s".formatted(concurrency));
+        }
+        this.dms = dms;
+        this.executor = executor;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    private <RESULT> CompletableFuture<RESULT> supply(Supplier<RESULT> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return operation.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Runs the operation for each distinct key, the results keep the iteration order of the keys.
+     * If some of them fail, the first failure is thrown with the others added as suppressed.
+     */
+    private <RESULT> CompletableFuture<SequencedMap<String, RESULT>> supplyForEachKey(Collection<String> keys, Function<String, RESULT> operation) {
+        SequencedMap<String, CompletableFuture<RESULT>> futures = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (!futures.containsKey(key)) {
+                futures.put(key, supply(() -> operation.apply(key)));
+            }
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, failure) -> joinAll(futures));
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<SequencedCollection<String>> getKeys(String directory) {
+        return supply(() -> dms.getKeys(directory));
+    }
+
+    @Override
+    public CompletableFuture<SequencedCollection<String>> getKeys(String directory, KeyQuery query) {
+        return supply(() -> dms.getKeys(directory, query));
+    }
+
+    @Override
+    public CompletableFuture<Void> add(String directory, String key, String textContent, Charset charset) {
+        return run(() -> dms.add(directory, key, textContent, charset));
+    }
+
+    @Override
+    public CompletableFuture<Void> add(String directory, String key, byte[] binaryContent) {
+        return run(() -> dms.add(directory, key, binaryContent));
+    }
+
+    @Override
+    public CompletableFuture<Void> add(String directory, String key, InputStream inputStream) {
+        return run(() -> dms.add(directory, key, inputStream));
+    }
+
+    @Override
+    public CompletableFuture<Void> add(String directory, String key, ReadableByteChannel channel) {
+        return run(() -> dms.add(directory, key, channel));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String directory, String key, String textContent, Charset charset) {
+        return supply(() -> dms.put(directory, key, textContent, charset));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String directory, String key, byte[] binaryContent) {
+        return supply(() -> dms.put(directory, key, binaryContent));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String directory, String key, Map<String, String> propertiesContent, Charset charset) {
+        return supply(() -> dms.put(directory, key, propertiesContent, charset));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String directory, String key, InputStream inputStream) {
+        return supply(() -> dms.put(directory, key, inputStream));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> put(String directory, String key, ReadableByteChannel channel) {
+        return supply(() -> dms.put(directory, key, channel));
+    }
+
+    @Override
+    public CompletableFuture<PutResult> putIfChanged(String directory, String key, String textContent, Charset charset) {
+        return supply(() -> dms.putIfChanged(directory, key, textContent, charset));
+    }
+
+    @Override
+    public CompletableFuture<PutResult> putIfChanged(String directory, String key, byte[] binaryContent) {
+        return supply(() -> dms.putIfChanged(directory, key, binaryContent));
+    }
+
+    @Override
+    public CompletableFuture<PutResult> putIfChanged(String directory, String key, Map<String, String> propertiesContent, Charset charset) {
+        return supply(() -> dms.putIfChanged(directory, key, propertiesContent, charset));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String directory, String key) {
+        return supply(() -> dms.exists(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<String> getTextContent(String directory, String key, Charset charset) {
+        return supply(() -> dms.getTextContent(directory, key, charset));
+    }
+
+    @Override
+    public CompletableFuture<String> getTextContent(String directory, String key, Charset charset, Charset alternativeCharset) {
+        return supply(() -> dms.getTextContent(directory, key, charset, alternativeCharset));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getTextLines(String directory, String key, Charset charset) {
+        return supply(() -> dms.getTextLines(directory, key, charset));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getTextLines(String directory, String key, int limit, Charset charset) {
+        return supply(() -> dms.getTextLines(directory, key, limit, charset));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getTextLines(String directory, String key, int limit, Charset charset, Charset alternativeCharset) {
+        return supply(() -> dms.getTextLines(directory, key, limit, charset, alternativeCharset));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getBinaryContent(String directory, String key) {
+        return supply(() -> dms.getBinaryContent(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getBinaryContent(String directory, String key, long offset, int length) {
+        return supply(() -> dms.getBinaryContent(directory, key, offset, length));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getPropertiesContent(String directory, String key, Charset charset) {
+        return supply(() -> dms.getPropertiesContent(directory, key, charset));
+    }
+
+    @Override
+    public CompletableFuture<String> getProperty(String directory, String key, String propertyName, Charset charset) {
+        return supply(() -> dms.getProperty(directory, key, propertyName, charset));
+    }
+
+    @Override
+    public CompletableFuture<LocalDateTime> getLastModifiedTime(String directory, String key) {
+        return supply(() -> dms.getLastModifiedTime(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<List<DocumentVersion>> getVersions(String directory, String key) {
+        return supply(() -> dms.getVersions(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getVersionContent(String directory, String key, LocalDateTime obsoleteTime) {
+        return supply(() -> dms.getVersionContent(directory, key, obsoleteTime));
+    }
+
+    @Override
+    public CompletableFuture<SequencedMap<String, Boolean>> putAllTextContent(String directory, Map<String, String> textContents, Charset charset) {
+        return supplyForEachKey(textContents.keySet(), key -> dms.put(directory, key, textContents.get(key), charset));
+    }
+
+    @Override
+    public CompletableFuture<SequencedMap<String, Boolean>> putAllBinaryContent(String directory, Map<String, byte[]> binaryContents) {
+        return supplyForEachKey(binaryContents.keySet(), key -> dms.put(directory, key, binaryContents.get(key)));
+    }
+
+    @Override
+    public CompletableFuture<SequencedMap<String, String>> getAllTextContent(String directory, Collection<String> keys, Charset charset) {
+        return supplyForEachKey(keys, key -> dms.getTextContent(directory, key, charset));
+    }
+
+    @Override
+    public CompletableFuture<SequencedMap<String, byte[]>> getAllBinaryContent(String directory, Collection<String> keys) {
+        return supplyForEachKey(keys, key -> dms.getBinaryContent(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<SequencedMap<String, Boolean>> existsAll(String directory, Collection<String> keys) {
+        return supplyForEachKey(keys, key -> dms.exists(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String directory, String key) {
+        return run(() -> dms.delete(directory, key));
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String directory, Collection<String> keys) {
+        return run(() -> dms.delete(directory, keys));
+    }
+
+    @Override
+    public <KEY> CompletableFuture<SequencedMap<KEY, String>> getRedundantPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc
+    ) {
+        return supply(() -> dms.getRedundantPeriodKeys(directory, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc));
+    }
+
+    @Override
+    public <KEY> CompletableFuture<PeriodCoverage<KEY>> getCoveringPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    ) {
+        return supply(() -> dms.getCoveringPeriodKeys(directory, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc, startDateIncl, endDateIncl));
+    }
+
+    @Override
+    public CompletableFuture<Integer> purge(String directory, String origKey, LocalDateTime obsoleteBefore) {
+        return supply(() -> dms.purge(directory, origKey, obsoleteBefore));
+    }
+
+    @Override
+    public CompletableFuture<Void> refresh(String directory) {
+        return run(() -> dms.refresh(directory));
+    }
+
+    @Override
+    public CompletableFuture<Void> resetWorkspace() {
+        return run(dms::resetWorkspace);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteWorkspace() {
+        return run(dms::deleteWorkspace);
+    }
+
+    @Override
+    public CompletableFuture<Integer> purgeWorkspace(LocalDateTime obsoleteBefore) {
+        return supply(() -> dms.purgeWorkspace(obsoleteBefore));
+    }
+}
@@ -0,0 +1,172 @@
+package com.brinvex.util.dms.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store keeping each distinct content once, named by its SHA-256 hash.
+ * Documents are hard links to the blobs, so all the readers work unchanged
+ * and the link count of a blob serves as its reference count.
+ * The hash is also stored in a user-defined attribute of the blob,
+ * so the blob of a document is found without reading its content.
+ * A blob with no other link than the one in this store is garbage.
+ */
+class BlobStore {
+
+    static final String DIRECTORY_NAME = ".dms-blobs";
+
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+
+    private static final String HASH_ATTRIBUTE = "user:dms.sha256";
+
+    private static final Map<Path, BlobStore> STORES = new ConcurrentHashMap<>();
+
+    private final Path rootPath;
+
+    private final Path tempPath;
+
+    /**
+     * Guards the links of the blobs, one per first byte of the hash,
+     * so a blob can't lose its last document while another document is linked to it.
+     */
+    private final Lock[] shardLocks = new Lock[256];
+
+    private BlobStore(Path rootPath) {
+        try {
+            if (!rootPath.getFileSystem().supportedFileAttributeViews().contains("unix")
+                || !Files.getFileStore(rootPath.getParent()).supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+                throw new UnsupportedOperationException("Deduplication requires a filesystem supporting hard links, unix and user-defined attributes: %s"
+                        .formatted(rootPath));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to inspect the filesystem of %s".formatted(rootPath), e);
+        }
+        this.rootPath = rootPath;
+        this.tempPath = rootPath.resolve("tmp");
+        for (int i = 0; i < shardLocks.length; i++) {
+            shardLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the store at the root path, shared by all the workspaces of the same base path so they take the same locks.
+     */
+    static BlobStore of(Path rootPath) {
+        return STORES.computeIfAbsent(rootPath.toAbsolutePath().normalize(), BlobStore::new);
+    }
+
+    /**
+     * Returns a not yet existing path, on the same filesystem as the blobs, to write a new content to.
+     */
+    Path newTempFile() throws IOException {
+        Files.createDirectories(tempPath);
+        return tempPath.resolve(UUID.randomUUID() + ".tmp");
+    }
+
+    /**
+     * Links the temp file into the store, unless a blob with the same content already exists,
+     * and makes the target path a link to the blob.
+     * The temp file is kept until the target link exists,
+     * so it can replace a blob collected concurrently by another process.
+     */
+    void linkAs(Path tempFile, Path targetPath) throws IOException {
+        byte[] hash = ContentDigest.sha256(tempFile);
+        Path blobPath = blobPath(hash);
+        Files.createDirectories(blobPath.getParent());
+        Lock lock = shardLocks[hash[0] & 0xff];
+        lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                if (!Files.exists(blobPath)) {
+                    Files.setAttribute(tempFile, HASH_ATTRIBUTE, hash);
+                    try {
+                        Files.createLink(blobPath, tempFile);
+                    } catch (FileAlreadyExistsException ignored) {
+                    }
+                }
+                try {
+                    Files.createLink(targetPath, blobPath);
+                    break;
+                } catch (NoSuchFileException e) {
+                    if (attempt >= 3) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Deletes the document file and, if it was the last reference, also its blob.
+     */
+    void delete(Path filePath) throws IOException {
+        byte[] hash = (byte[]) Files.getAttribute(filePath, HASH_ATTRIBUTE);
+        Lock lock = shardLocks[hash[0] & 0xff];
+        lock.lock();
+        try {
+            Files.delete(filePath);
+            deleteIfUnreferenced(blobPath(hash));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the blobs no document links to, e.g. left behind by a crash
+     * or by several processes purging the documents of the same blob at the same time.
+     * Returns the number of deleted blobs.
+     */
+    int deleteOrphans() throws IOException {
+        if (!Files.isDirectory(rootPath)) {
+            return 0;
+        }
+        List<Path> shardPaths;
+        try (Stream<Path> shardStream = Files.list(rootPath)) {
+            shardPaths = shardStream.filter(p -> !p.equals(tempPath)).toList();
+        }
+        int deleted = 0;
+        for (Path shardPath : shardPaths) {
+            Lock lock = shardLocks[HexFormat.fromHexDigits(shardPath.getFileName().toString())];
+            lock.lock();
+            try (Stream<Path> blobStream = Files.list(shardPath)) {
+                for (Path blobPath : blobStream.toList()) {
+                    if (deleteIfUnreferenced(blobPath)) {
+                        deleted++;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return deleted;
+    }
+
+    private static boolean deleteIfUnreferenced(Path blobPath) throws IOException {
+        return Files.exists(blobPath) && linkCount(blobPath) == 1 && Files.deleteIfExists(blobPath);
+    }
+
+    private Path blobPath(byte[] hash) {
+        String hexHash = HexFormat.of().formatHex(hash);
+        return rootPath.resolve(hexHash.substring(0, 2)).resolve(hexHash);
+    }
+
+    private static int linkCount(Path path) throws IOException {
+        return (int) Files.getAttribute(path, LINK_COUNT_ATTRIBUTE);
+    }
+}
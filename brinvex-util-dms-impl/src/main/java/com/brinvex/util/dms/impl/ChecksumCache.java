@@ -0,0 +1,86 @@
+package com.brinvex.util.dms.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the content digests of the files compared by {@link FilesystemDmsImpl#putIfChanged},
+ * so that an unchanged document is detected with a single stat instead of reading the file.
+ * An entry is valid only while the size and the last-modified time of the file stay the same,
+ * and it is dropped by every write of the file through {@link FilesystemDmsImpl},
+ * so the entries are kept only for the live documents and trusted only against the external changes.
+ */
+class ChecksumCache {
+
+    interface ContentOpener {
+        InputStream open(Path filePath) throws IOException;
+    }
+
+    private record Entry(long size, FileTime lastModifiedTime, byte[] digest) {
+    }
+
+    private final Map<Path, Entry> pathToEntry = new ConcurrentHashMap<>();
+
+    private final ContentOpener contentOpener;
+
+    /**
+     * @param contentOpener opens the decoded content of an encoded file, or {@code null} if no file is encoded
+     */
+    ChecksumCache(ContentOpener contentOpener) {
+        this.contentOpener = contentOpener;
+    }
+
+    /**
+     * Compares the stored file with the given content, length first, then the digests.
+     *
+     * @param encoded whether the file may hold an encoded content, its size can't be then compared directly
+     */
+    boolean contentEquals(Path filePath, byte[] content, boolean encoded) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        if (!encoded && attrs.size() != content.length) {
+            return false;
+        }
+        Entry entry = pathToEntry.get(filePath);
+        if (entry == null || entry.size != attrs.size() || !entry.lastModifiedTime.equals(attrs.lastModifiedTime())) {
+            entry = new Entry(attrs.size(), attrs.lastModifiedTime(), digest(filePath, encoded));
+            pathToEntry.put(filePath, entry);
+        }
+        return Arrays.equals(entry.digest, ContentDigest.sha256(content));
+    }
+
+    /**
+     * Records the digest of the content just written to the file.
+     */
+    void update(Path filePath, byte[] content) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        pathToEntry.put(filePath, new Entry(attrs.size(), attrs.lastModifiedTime(), ContentDigest.sha256(content)));
+    }
+
+    private byte[] digest(Path filePath, boolean encoded) throws IOException {
+        if (!encoded) {
+            return ContentDigest.sha256(filePath);
+        }
+        try (InputStream inputStream = contentOpener.open(filePath)) {
+            return ContentDigest.sha256(inputStream);
+        }
+    }
+
+    void invalidateFile(Path filePath) {
+        pathToEntry.remove(filePath);
+    }
+
+    void invalidate(Path directoryPath) {
+        pathToEntry.keySet().removeIf(path -> path.startsWith(directoryPath));
+    }
+
+    void invalidateAll() {
+        pathToEntry.clear();
+    }
+}
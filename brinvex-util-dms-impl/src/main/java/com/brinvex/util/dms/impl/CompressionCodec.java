@@ -0,0 +1,109 @@
+package com.brinvex.util.dms.impl;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Deflate compression of the stored documents.
+ * A compressed file starts with a magic header, so it can be told apart from the files stored uncompressed,
+ * e.g. before the compression was enabled, and both can be read transparently.
+ * The native {@link Deflater}/{@link Inflater} instances are expensive to create, so they are pooled.
+ */
+class CompressionCodec {
+
+    private static final byte[] MAGIC = "BXDMSZ01".getBytes(US_ASCII);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int POOL_SIZE = 64;
+
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * Writes the magic header and returns a stream compressing everything written to it into the given stream.
+     */
+    OutputStream compress(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+        Deflater pooledDeflater = deflater;
+        return new DeflaterOutputStream(out, pooledDeflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        pooledDeflater.reset();
+                        if (!deflaters.offer(pooledDeflater)) {
+                            pooledDeflater.end();
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a stream of the decompressed content if the given stream starts with the magic header,
+     * otherwise a stream of the unchanged content.
+     */
+    InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream bufferedIn = new BufferedInputStream(in, BUFFER_SIZE);
+        bufferedIn.mark(MAGIC.length);
+        byte[] header = bufferedIn.readNBytes(MAGIC.length);
+        if (!Arrays.equals(header, MAGIC)) {
+            bufferedIn.reset();
+            return bufferedIn;
+        }
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        Inflater pooledInflater = inflater;
+        return new InflaterInputStream(bufferedIn, pooledInflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        super.close();
+                    } finally {
+                        pooledInflater.reset();
+                        if (!inflaters.offer(pooledInflater)) {
+                            pooledInflater.end();
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    boolean isCompressed(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.ContentCacheStats;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Read-through cache of the decoded contents of the document files, bounded by an approximate number of bytes.
+ * A file can be cached in several representations, e.g. as text in different charsets,
+ * and is evicted as a whole, the least recently used first.
+ * <p>
+ * The write operations of {@link FilesystemDmsImpl} invalidate the file after it is modified.
+ * A content loaded concurrently with an invalidation is returned but not cached,
+ * so a stale or partially written content never gets into the cache.
+ */
+class ContentCache {
+
+    interface ContentLoader<CONTENT> {
+        CONTENT load(Path filePath) throws IOException;
+    }
+
+    /**
+     * A form in which the content is cached, e.g. binary or text in a charset.
+     * Mutable contents are copied on the way out, so the callers can't modify the cached ones.
+     */
+    record Representation<CONTENT>(String name, UnaryOperator<CONTENT> copier, ToLongFunction<CONTENT> weigher) {
+
+        static final Representation<byte[]> BINARY = new Representation<>("binary", byte[]::clone, content -> ARRAY_OVERHEAD + content.length);
+
+        static Representation<String> text(Charset charset) {
+            return new Representation<>("text:" + charset.name(), UnaryOperator.identity(), ContentCache::weigh);
+        }
+
+        static Representation<List<String>> lines(Charset charset) {
+            return new Representation<>("lines:" + charset.name(), ArrayList::new, lines -> {
+                long weight = 0;
+                for (String line : lines) {
+                    weight += weigh(line);
+                }
+                return weight;
+            });
+        }
+
+        static Representation<Map<String, String>> properties(Charset charset) {
+            return new Representation<>("properties:" + charset.name(), LinkedHashMap::new, properties -> {
+                long weight = 0;
+                for (Map.Entry<String, String> e : properties.entrySet()) {
+                    weight += weigh(e.getKey()) + weigh(e.getValue()) + ENTRY_OVERHEAD;
+                }
+                return weight;
+            });
+        }
+    }
+
+    /**
+     * The rough in-heap overheads added to the weights: of an array, of a string with its backing array and of a map entry.
+     */
+    private static final long ARRAY_OVERHEAD = 16;
+
+    private static final long STRING_OVERHEAD = 40;
+
+    private static final long ENTRY_OVERHEAD = 32;
+
+    private static final class FileEntry {
+        private final long size;
+        private final FileTime lastModifiedTime;
+        private final Map<String, Object> representations = new HashMap<>(4);
+        private long weight;
+
+        private FileEntry(long size, FileTime lastModifiedTime) {
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+        }
+    }
+
+    private final long maxBytes;
+
+    private final boolean validationEnabled;
+
+    /**
+     * In access order, guarded by itself.
+     */
+    private final LinkedHashMap<Path, FileEntry> pathToEntry = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+
+    /**
+     * Incremented by every invalidation, lets a loader detect that its content may be stale.
+     */
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    ContentCache(long maxBytes, boolean validationEnabled) {
+        this.maxBytes = maxBytes;
+        this.validationEnabled = validationEnabled;
+    }
+
+    <CONTENT> CONTENT get(Path filePath, Representation<CONTENT> representation, ContentLoader<CONTENT> loader) throws IOException {
+        return get(filePath, representation, loader, representation.copier());
+    }
+
+    /**
+     * Like {@link #get(Path, Representation, ContentLoader)}, but returns the result of the reader
+     * applied to the cached content instead of its copy, e.g. a single value of a map.
+     */
+    <CONTENT, RESULT> RESULT get(
+            Path filePath,
+            Representation<CONTENT> representation,
+            ContentLoader<CONTENT> loader,
+            Function<CONTENT, RESULT> reader
+    ) throws IOException {
+        BasicFileAttributes attrs = validationEnabled ? Files.readAttributes(filePath, BasicFileAttributes.class) : null;
+        long loadGeneration;
+        synchronized (pathToEntry) {
+            FileEntry entry = pathToEntry.get(filePath);
+            if (entry != null && attrs != null && (entry.size != attrs.size() || !entry.lastModifiedTime.equals(attrs.lastModifiedTime()))) {
+                remove(filePath);
+                entry = null;
+            }
+            if (entry != null) {
+                @SuppressWarnings("unchecked")
+                CONTENT content = (CONTENT) entry.representations.get(representation.name());
+                if (content != null) {
+                    hits.increment();
+                    return reader.apply(content);
+                }
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        if (attrs == null) {
+            attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+        }
+        CONTENT content = loader.load(filePath);
+        long contentWeight = representation.weigher().applyAsLong(content) + ENTRY_OVERHEAD;
+        synchronized (pathToEntry) {
+            if (loadGeneration == generation && contentWeight <= maxBytes) {
+                FileEntry entry = pathToEntry.get(filePath);
+                if (entry == null) {
+                    entry = new FileEntry(attrs.size(), attrs.lastModifiedTime());
+                    pathToEntry.put(filePath, entry);
+                }
+                if (entry.representations.putIfAbsent(representation.name(), content) == null) {
+                    entry.weight += contentWeight;
+                    weight += contentWeight;
+                    evictOverBudget();
+                }
+            }
+        }
+        return reader.apply(content);
+    }
+
+    private void evictOverBudget() {
+        Iterator<FileEntry> eldestFirst = pathToEntry.values().iterator();
+        while (weight > maxBytes && eldestFirst.hasNext()) {
+            weight -= eldestFirst.next().weight;
+            eldestFirst.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(Path filePath) {
+        FileEntry entry = pathToEntry.remove(filePath);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    void invalidate(Path filePath) {
+        synchronized (pathToEntry) {
+            generation++;
+            remove(filePath);
+        }
+    }
+
+    void invalidateDirectory(Path directoryPath) {
+        synchronized (pathToEntry) {
+            generation++;
+            Iterator<Map.Entry<Path, FileEntry>> entries = pathToEntry.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Path, FileEntry> e = entries.next();
+                if (e.getKey().startsWith(directoryPath)) {
+                    weight -= e.getValue().weight;
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (pathToEntry) {
+            generation++;
+            pathToEntry.clear();
+            weight = 0;
+        }
+    }
+
+    /**
+     * Returns the in-heap size of the string, whose backing array holds one byte per character
+     * if all of them are Latin-1 (compact strings), otherwise two.
+     */
+    private static long weigh(String s) {
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) > 0xFF) {
+                return STRING_OVERHEAD + 2L * length;
+            }
+        }
+        return STRING_OVERHEAD + length;
+    }
+
+    ContentCacheStats getStats() {
+        synchronized (pathToEntry) {
+            return new ContentCacheStats(hits.sum(), misses.sum(), evictions.sum(), pathToEntry.size(), weight);
+        }
+    }
+}
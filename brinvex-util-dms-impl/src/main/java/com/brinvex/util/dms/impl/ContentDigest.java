@@ -0,0 +1,41 @@
+package com.brinvex.util.dms.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+class ContentDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    public static byte[] sha256(byte[] content) {
+        return newDigest().digest(content);
+    }
+
+    public static byte[] sha256(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return sha256(inputStream);
+        }
+    }
+
+    public static byte[] sha256(InputStream inputStream) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = inputStream.read(buffer)) > 0) {
+            digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
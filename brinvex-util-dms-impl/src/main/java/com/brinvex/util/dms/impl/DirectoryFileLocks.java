@@ -0,0 +1,160 @@
+package com.brinvex.util.dms.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cross-process locks of the directories of a workspace, held by {@link FileChannel#lock} on a fixed number of lock files,
+ * selected by a hash of the directory. The directories sharing a lock file are serialized too.
+ * <p>
+ * The file locks are held on behalf of the whole JVM, so the threads of the JVM first take a read/write lock of the lock file,
+ * the first reader takes a shared file lock for all the readers and each writer an exclusive one.
+ * The instances are shared by all the {@link FilesystemDmsImpl} instances of a workspace in the JVM,
+ * the channels of the lock files stay open, a channel closed by an interrupted thread is reopened.
+ */
+class DirectoryFileLocks {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectoryFileLocks.class);
+
+    static final String DIRECTORY_NAME = ".dms-locks";
+
+    private static final int STRIPE_COUNT = 64;
+
+    private static final Map<Path, DirectoryFileLocks> LOCK_DIRECTORY_TO_LOCKS = new ConcurrentHashMap<>();
+
+    private static final class Stripe {
+        private final Path lockFilePath;
+        private final ReentrantReadWriteLock threadLock = new ReentrantReadWriteLock();
+        private FileChannel channel;
+        private FileLock fileLock;
+        private int sharedHolders;
+
+        private Stripe(Path lockFilePath) {
+            this.lockFilePath = lockFilePath;
+        }
+
+        private synchronized void lockFile(boolean shared) {
+            if (shared && sharedHolders++ > 0) {
+                return;
+            }
+            try {
+                if (channel == null || !channel.isOpen()) {
+                    Files.createDirectories(lockFilePath.getParent());
+                    channel = FileChannel.open(lockFilePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                fileLock = channel.lock(0, Long.MAX_VALUE, shared);
+            } catch (IOException e) {
+                if (shared) {
+                    sharedHolders--;
+                }
+                throw new UncheckedIOException("Failed to lock the file: %s".formatted(lockFilePath), e);
+            }
+        }
+
+        private synchronized void unlockFile(boolean shared) {
+            if (shared && --sharedHolders > 0) {
+                return;
+            }
+            try {
+                fileLock.release();
+            } catch (IOException e) {
+                LOG.warn("Failed to release the lock of the file: {}", lockFilePath, e);
+            }
+            fileLock = null;
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    private DirectoryFileLocks(Path lockDirectoryPath) {
+        this.stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe(lockDirectoryPath.resolve("%02x.lock".formatted(i)));
+        }
+    }
+
+    /**
+     * Returns the locks of the workspace, keeping their lock files in a directory next to the workspaces.
+     */
+    static DirectoryFileLocks forWorkspace(Path basePath, String workspace) {
+        Path lockDirectoryPath = basePath.resolve(DIRECTORY_NAME).resolve(workspace).toAbsolutePath().normalize();
+        return LOCK_DIRECTORY_TO_LOCKS.computeIfAbsent(lockDirectoryPath, DirectoryFileLocks::new);
+    }
+
+    /**
+     * Returns the given lock of the current JVM combined with the lock of the directory,
+     * taken after the given lock and released before it.
+     * The exclusive lock is reentrant, a thread holding it may take also the shared one.
+     */
+    DocumentLock guard(Lock lock, String directory, boolean exclusive) {
+        int h = directory.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return new GuardedLock(lock, stripes[h & (STRIPE_COUNT - 1)], exclusive);
+    }
+
+    private record GuardedLock(Lock innerLock, Stripe stripe, boolean exclusive) implements DocumentLock {
+
+        @Override
+        public void lock() {
+            innerLock.lock();
+            try {
+                if (exclusive) {
+                    stripe.threadLock.writeLock().lock();
+                    if (stripe.threadLock.getWriteHoldCount() == 1) {
+                        lockFile(false, stripe.threadLock.writeLock());
+                    }
+                } else {
+                    stripe.threadLock.readLock().lock();
+                    if (!stripe.threadLock.isWriteLockedByCurrentThread()) {
+                        lockFile(true, stripe.threadLock.readLock());
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                innerLock.unlock();
+                throw e;
+            }
+        }
+
+        private void lockFile(boolean shared, Lock threadLock) {
+            try {
+                stripe.lockFile(shared);
+            } catch (RuntimeException | Error e) {
+                threadLock.unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        public void unlock() {
+            try {
+                if (exclusive) {
+                    if (stripe.threadLock.getWriteHoldCount() == 1) {
+                        stripe.unlockFile(false);
+                    }
+                    stripe.threadLock.writeLock().unlock();
+                } else {
+                    if (!stripe.threadLock.isWriteLockedByCurrentThread()) {
+                        stripe.unlockFile(true);
+                    }
+                    stripe.threadLock.readLock().unlock();
+                }
+            } finally {
+                innerLock.unlock();
+            }
+        }
+    }
+}
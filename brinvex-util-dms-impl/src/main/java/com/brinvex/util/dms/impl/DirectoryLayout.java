@@ -0,0 +1,93 @@
+package com.brinvex.util.dms.impl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Placement of the document files of a directory, including their deleted and overridden versions.
+ * <p>
+ * The flat layout keeps all the files directly in the directory.
+ * The hashed layout spreads them over up to 256 subdirectories, the shards, named by {@link #SHARD_PREFIX}
+ * and two hex digits of a hash of the key. The versions of a key stay in the shard of the key.
+ * The prefix is reserved, no logical directory may start with it, so the shards never collide with the subdirectories
+ * of a directory. The hash is part of the storage format and must never change.
+ */
+class DirectoryLayout {
+
+    static final DirectoryLayout FLAT = new DirectoryLayout(false);
+
+    static final DirectoryLayout HASHED = new DirectoryLayout(true);
+
+    static final String SHARD_PREFIX = "_SHD_";
+
+    private static final String[] SHARD_NAMES = new String[256];
+
+    static {
+        for (int i = 0; i < SHARD_NAMES.length; i++) {
+            SHARD_NAMES[i] = SHARD_PREFIX + "%02x".formatted(i);
+        }
+    }
+
+    private final boolean hashed;
+
+    private DirectoryLayout(boolean hashed) {
+        this.hashed = hashed;
+    }
+
+    boolean isHashed() {
+        return hashed;
+    }
+
+    /**
+     * Returns the path of the live document file, the versions are its siblings.
+     */
+    Path resolve(Path directoryPath, String key) {
+        return hashed ? directoryPath.resolve(shardOf(key)).resolve(key) : directoryPath.resolve(key);
+    }
+
+    /**
+     * Creates the shard of a new file, if needed.
+     */
+    void createParent(Path filePath) throws IOException {
+        if (hashed) {
+            Files.createDirectories(filePath.getParent());
+        }
+    }
+
+    /**
+     * Returns the existing filesystem directories holding the files of the directory.
+     */
+    List<Path> listFileDirectories(Path directoryPath) throws IOException {
+        if (!hashed) {
+            return List.of(directoryPath);
+        }
+        List<Path> shardPaths = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(directoryPath, child -> isShardName(child.getFileName().toString()))) {
+            for (Path child : children) {
+                shardPaths.add(child);
+            }
+        }
+        return shardPaths;
+    }
+
+    /**
+     * Mixes the key hash code by the MurmurHash3 finalizer, so similar keys are spread evenly.
+     */
+    static String shardOf(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return SHARD_NAMES[h & 0xFF];
+    }
+
+    static boolean isShardName(String name) {
+        return name.startsWith(SHARD_PREFIX);
+    }
+}
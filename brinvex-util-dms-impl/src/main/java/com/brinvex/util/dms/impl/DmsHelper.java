@@ -0,0 +1,107 @@
+package com.brinvex.util.dms.impl;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SequencedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Validation of the names and parallel processing of the keys, shared by the {@link com.brinvex.util.dms.api.Dms} implementations.
+ */
+final class DmsHelper {
+
+    /**
+     * The default executor, running every task in a new virtual thread.
+     */
+    static final Executor VIRTUAL_THREAD_EXECUTOR = task -> Thread.ofVirtual().name("dms-io").start(task);
+
+    private DmsHelper() {
+    }
+
+    static void validateWorkspaceSyntax(String workspaceName) {
+        if (workspaceName == null || workspaceName.isBlank()
+            || workspaceName.equals(BlobStore.DIRECTORY_NAME) || workspaceName.equals(DirectoryFileLocks.DIRECTORY_NAME)) {
+            throw new IllegalArgumentException("Invalid workspace: %s".formatted(workspaceName));
+        }
+    }
+
+    /**
+     * Rejects also the names of the shards of the hashed layout, see {@link DirectoryLayout}.
+     */
+    static void validateDirectorySyntax(String directoryName) {
+        if (directoryName == null || directoryName.isBlank()) {
+            throw new IllegalArgumentException("Invalid directory: %s".formatted(directoryName));
+        }
+        for (String directoryPart : directoryName.split("[/\\\\]")) {
+            if (DirectoryLayout.isShardName(directoryPart)) {
+                throw new IllegalArgumentException("Invalid directory: %s".formatted(directoryName));
+            }
+        }
+    }
+
+    static void validateKeySyntax(String keyName) {
+        if (keyName == null || keyName.isBlank()) {
+            throw new IllegalArgumentException("Invalid key: %s".formatted(keyName));
+        }
+    }
+
+    /**
+     * Runs the task for each distinct key on the executor and waits for all of them.
+     * At most {@code concurrency} tasks are submitted at a time, so a large batch can't exhaust the file descriptors.
+     * The results keep the iteration order of the keys.
+     * If some tasks fail, the first failure is thrown with the others added as suppressed.
+     */
+    static <RESULT> SequencedMap<String, RESULT> forEachKeyInParallel(
+            Collection<String> keys,
+            Executor executor,
+            int concurrency,
+            Function<String, RESULT> task
+    ) {
+        Semaphore inFlight = new Semaphore(concurrency);
+        SequencedMap<String, CompletableFuture<RESULT>> futures = new LinkedHashMap<>();
+        for (String key : keys) {
+            if (!futures.containsKey(key)) {
+                inFlight.acquireUninterruptibly();
+                futures.put(key, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return task.apply(key);
+                    } finally {
+                        inFlight.release();
+                    }
+                }, executor));
+            }
+        }
+        return joinAll(futures);
+    }
+
+    /**
+     * Waits for all the futures and returns their results in the same order.
+     * If some of them fail, the first failure is thrown with the others added as suppressed.
+     */
+    static <RESULT> SequencedMap<String, RESULT> joinAll(SequencedMap<String, CompletableFuture<RESULT>> futures) {
+        SequencedMap<String, RESULT> results = new LinkedHashMap<>();
+        RuntimeException failure = null;
+        for (Map.Entry<String, CompletableFuture<RESULT>> e : futures.entrySet()) {
+            try {
+                results.put(e.getKey(), e.getValue().join());
+            } catch (CompletionException completionException) {
+                RuntimeException cause = completionException.getCause() instanceof RuntimeException runtimeCause
+                        ? runtimeCause : completionException;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+}
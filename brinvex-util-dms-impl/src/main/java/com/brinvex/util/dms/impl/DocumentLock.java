@@ -0,0 +1,27 @@
+package com.brinvex.util.dms.impl;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Lock of a document held by the {@link FilesystemDmsImpl} operations, taken and released by the same thread.
+ */
+interface DocumentLock {
+
+    void lock();
+
+    void unlock();
+
+    static DocumentLock of(Lock lock) {
+        return new DocumentLock() {
+            @Override
+            public void lock() {
+                lock.lock();
+            }
+
+            @Override
+            public void unlock() {
+                lock.unlock();
+            }
+        };
+    }
+}
@@ -1,117 +1,154 @@
 package com.brinvex.util.dms.impl;
 
+import com.brinvex.util.dms.api.ContentCacheStats;
 import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DmsConfig;
+import com.brinvex.util.dms.api.DocumentVersion;
+import com.brinvex.util.dms.api.KeyQuery;
+import com.brinvex.util.dms.api.PeriodCoverage;
+import com.brinvex.util.dms.api.PutResult;
+import com.brinvex.util.dms.impl.ContentCache.Representation;
+import com.brinvex.util.dms.impl.OperationObserver.ByteCounter;
+import com.brinvex.util.dms.impl.SoftDeleteHelper.ObsoleteFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.SequencedCollection;
 import java.util.SequencedMap;
 import java.util.SequencedSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
+import static com.brinvex.util.dms.impl.DmsHelper.VIRTUAL_THREAD_EXECUTOR;
+import static com.brinvex.util.dms.impl.DmsHelper.forEachKeyInParallel;
+import static com.brinvex.util.dms.impl.DmsHelper.validateDirectorySyntax;
+import static com.brinvex.util.dms.impl.DmsHelper.validateKeySyntax;
+import static com.brinvex.util.dms.impl.DmsHelper.validateWorkspaceSyntax;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * {@link Dms} storing each document in its own file, safe for the use by many threads.
+ * <p>
+ * The operations on one document are serialized by a read/write lock of its directory and key,
+ * taken from a fixed number of stripes, so the operations on different documents run in parallel,
+ * unless their keys share a stripe. A read never sees a document moved away by an override or a deletion
+ * and not written yet. The operations on many documents lock them one by one, so they are not atomic.
+ * A stream or a reader opened by a read is not locked, on POSIX filesystems it keeps reading the content it was opened on.
+ * The reset and the deletion of the workspace wait for the running operations and block the others.
+ * <p>
+ * The locks are held only within one instance, several instances or processes using the same workspace
+ * must be coordinated by the caller, or by the cross-process locks of the directories,
+ * see {@link DmsConfig#crossProcessLockingEnabled()}.
+ */
 @SuppressWarnings("DuplicatedCode")
 public class FilesystemDmsImpl implements Dms {
 
     private static final Logger LOG = LoggerFactory.getLogger(FilesystemDmsImpl.class);
 
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    private static final int KEY_LOCK_STRIPES = 1024;
+
     private final String workspace;
 
     private final Path workspacePath;
 
-    private boolean workspaceDeleted;
+    private volatile boolean workspaceDeleted;
 
-    private interface IOConsumer<I> {
-        void accept(I input) throws IOException;
-    }
+    private final KeyIndex keyIndex;
 
-    private interface IOFunction<I, O> {
-        O apply(I input) throws IOException;
-    }
+    private final ObsoleteIndex obsoleteIndex;
 
-    @SuppressWarnings("SpellCheckingInspection")
-    private static class SoftDeleteHelper {
-        private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
-        private static final Pattern deletedPrefixPattern = Pattern.compile("^_DEL_(\\d{8}_\\d{6}_\\d{3})_!@#-$");
-        private static final Pattern overriddenPrefixPattern = Pattern.compile("^_OVR_(\\d{8}_\\d{6}_\\d{3})_!@#-$");
-        private static final int deletedPrefixLength = "_DEL_yyyyMMdd_HHmmss_SSS_!@#-".length();
-        private static final int overriddenPrefixLength = "_OVR_yyyyMMdd_HHmmss_SSS_!@#-".length();
+    private final PeriodIndex periodIndex;
 
-        private static Path contructSoftDeletedPath(Path oldPath, LocalDateTime timestamp) {
-            String prefix = "_DEL_" + dtf.format(timestamp) + "_!@#-";
-            return oldPath.getParent().resolve(prefix + oldPath.getFileName());
-        }
+    private final Executor executor;
 
-        private static Path contructOverriddenPath(Path oldPath, LocalDateTime timestamp) {
-            String prefix = "_OVR_" + dtf.format(timestamp) + "_!@#-";
-            return oldPath.getParent().resolve(prefix + oldPath.getFileName());
-        }
+    private final int batchConcurrency;
 
-        private static boolean isObsolete(String filename, String origKey, LocalDateTime obsoleteBefore) {
-            int filenameLength = filename.length();
-            if (filenameLength <= deletedPrefixLength) {
-                return false;
-            }
-            String left = filename.substring(0, deletedPrefixLength);
-            boolean result = true;
-            if (origKey != null) {
-                String right = filename.substring(deletedPrefixLength);
-                result = right.equals(origKey);
-            }
-            if (result) {
-                Matcher m;
-                if ((m = deletedPrefixPattern.matcher(left)).find()) {
-                    if (obsoleteBefore != null) {
-                        LocalDateTime delDate = LocalDateTime.parse(m.group(1), dtf);
-                        result = delDate.isBefore(obsoleteBefore);
-                    }
-                } else if ((m = overriddenPrefixPattern.matcher(left)).find()) {
-                    if (obsoleteBefore != null) {
-                        LocalDateTime ovrDate = LocalDateTime.parse(m.group(1), dtf);
-                        result = ovrDate.isBefore(obsoleteBefore);
-                    }
-                } else {
-                    result = false;
-                }
-            }
-            return result;
-        }
+    private final BlobStore blobStore;
+
+    private final CompressionCodec compressionCodec;
+
+    private final Predicate<String> compressedDirectories;
+
+    private final ChecksumCache checksumCache;
+
+    private final OperationObserver operationObserver;
+
+    private final ContentCache contentCache;
+
+    private final DirectoryLayout layout;
 
-        private static boolean isObsolete(String filename) {
-            int filenameLength = filename.length();
-            if (filenameLength <= deletedPrefixLength) {
-                return false;
+    private final KeyLocks keyLocks = new KeyLocks(KEY_LOCK_STRIPES);
+
+    private final DirectoryFileLocks directoryLocks;
+
+    /**
+     * Held shared by the document operations and exclusively by the reset and the deletion of the workspace.
+     */
+    private final ReadWriteLock workspaceLock = new ReentrantReadWriteLock();
+
+    /**
+     * Writes the content of a document, either to a stream or directly to a new file.
+     */
+    private interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+
+        default void write(Path path) throws IOException {
+            try (OutputStream out = Files.newOutputStream(path)) {
+                write(out);
             }
-            String left = filename.substring(0, deletedPrefixLength);
-            return deletedPrefixPattern.matcher(left).matches();
         }
     }
 
+    private interface IOFunction<I, O> {
+        O apply(I input) throws IOException;
+    }
+
     public FilesystemDmsImpl(Path basePath, String workspace) {
+        this(basePath, workspace, DmsConfig.defaults());
+    }
+
+    public FilesystemDmsImpl(Path basePath, String workspace, DmsConfig config) {
         validateWorkspaceSyntax(workspace);
         this.workspace = workspace;
         this.workspacePath = basePath.resolve(workspace);
@@ -125,117 +162,439 @@ public class FilesystemDmsImpl implements Dms {
             throw new IllegalArgumentException("Workspace is not a directory: %s".formatted(workspace));
         }
         this.workspaceDeleted = false;
+        this.keyIndex = config.keyIndexEnabled() ? new KeyIndex(this::listKeys) : null;
+        this.obsoleteIndex = config.obsoleteIndexEnabled() ? new ObsoleteIndex(this::listObsoleteFiles) : null;
+        this.periodIndex = config.periodIndexEnabled() ? new PeriodIndex() : null;
+        this.executor = config.executor() != null ? config.executor() : VIRTUAL_THREAD_EXECUTOR;
+        this.batchConcurrency = config.batchConcurrency();
+        this.blobStore = config.deduplicationEnabled() ? BlobStore.of(basePath.resolve(BlobStore.DIRECTORY_NAME)) : null;
+        this.compressedDirectories = config.compressedDirectories();
+        this.compressionCodec = compressedDirectories != null ? new CompressionCodec() : null;
+        this.checksumCache = new ChecksumCache(compressionCodec != null ? this::newDecompressingInputStream : null);
+        this.operationObserver = new OperationObserver(config.observer(), workspace);
+        this.contentCache = config.contentCacheMaxBytes() > 0
+                ? new ContentCache(config.contentCacheMaxBytes(), config.contentCacheValidationEnabled()) : null;
+        this.layout = config.hashedLayoutEnabled() ? DirectoryLayout.HASHED : DirectoryLayout.FLAT;
+        this.directoryLocks = config.crossProcessLockingEnabled() ? DirectoryFileLocks.forWorkspace(basePath, workspace) : null;
     }
 
     @Override
     public SequencedCollection<String> getKeys(String directory) {
+        return call("getKeys", directory, bytes -> findKeys(directory));
+    }
+
+    private SequencedCollection<String> findKeys(String directory) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         Path directoryPath = workspacePath.resolve(directory);
+        if (keyIndex != null) {
+            return keyIndex.getKeys(directoryPath);
+        }
+        try {
+            return listKeys(directoryPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list files at path: %s".formatted(directoryPath), e);
+        }
+    }
+
+    @Override
+    public SequencedCollection<String> getKeys(String directory, KeyQuery query) {
+        requireNonNull(query);
+        return call("getKeys", directory, bytes -> findKeys(directory, query));
+    }
+
+    private SequencedCollection<String> findKeys(String directory, KeyQuery query) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        Path directoryPath = workspacePath.resolve(directory);
+        if (keyIndex != null) {
+            return keyIndex.getKeys(directoryPath, query);
+        }
+        try {
+            return listKeys(directoryPath, query);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list files at path: %s".formatted(directoryPath), e);
+        }
+    }
+
+    private List<String> listKeys(Path directoryPath) throws IOException {
+        return listKeys(directoryPath, KeyQuery.all());
+    }
+
+    /**
+     * Filters the directory entries while streaming them and keeps only up to the limit of the lowest matching keys,
+     * so a page of a large directory is selected without collecting and sorting all of its keys.
+     */
+    private List<String> listKeys(Path directoryPath, KeyQuery query) throws IOException {
         if (!Files.exists(directoryPath)) {
             return Collections.emptyList();
         } else if (!Files.isDirectory(directoryPath)) {
             throw new IllegalArgumentException("Not a directory: %s, workspace=%s".formatted(directoryPath, workspace));
         }
-        try (Stream<Path> fileStream = Files.list(directoryPath)) {
+        KeyQueries.Collector collector = new KeyQueries.Collector(query);
+        for (Path fileDirectoryPath : layout.listFileDirectories(directoryPath)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(fileDirectoryPath)) {
+                for (Path file : files) {
+                    String filename = file.getFileName().toString();
+                    if (query.matches(filename) && !SoftDeleteHelper.isObsolete(filename)) {
+                        collector.accept(filename);
+                    }
+                }
+            }
+        }
+        return collector.result();
+    }
+
+    private List<ObsoleteFile> listObsoleteFiles(Path directoryPath) throws IOException {
+        if (!Files.exists(directoryPath)) {
+            return Collections.emptyList();
+        } else if (!Files.isDirectory(directoryPath)) {
+            throw new IllegalArgumentException("Not a directory: %s, workspace=%s".formatted(directoryPath, workspace));
+        }
+        List<ObsoleteFile> obsoleteFiles = new ArrayList<>();
+        for (Path fileDirectoryPath : layout.listFileDirectories(directoryPath)) {
+            obsoleteFiles.addAll(listObsoleteFilesIn(fileDirectoryPath));
+        }
+        return obsoleteFiles;
+    }
+
+    private static List<ObsoleteFile> listObsoleteFilesIn(Path fileDirectoryPath) throws IOException {
+        try (Stream<Path> fileStream = Files.list(fileDirectoryPath)) {
             return fileStream
-                    .map(Path::getFileName)
-                    .map(Path::toString)
-                    .filter(Predicate.not(SoftDeleteHelper::isObsolete))
-                    .sorted()
+                    .map(p -> SoftDeleteHelper.parseObsolete(p.getFileName().toString()))
+                    .filter(Objects::nonNull)
                     .toList();
-        } catch (IOException e) {
-            throw new UncheckedIOException("Failed to list files at path: %s".formatted(directoryPath), e);
         }
     }
 
+    /**
+     * Returns the path of the live document file, see {@link DirectoryLayout}.
+     */
+    private Path resolveFile(Path directoryPath, String key) {
+        return layout.resolve(directoryPath, key);
+    }
+
+    private Path resolveObsoleteFile(Path directoryPath, ObsoleteFile obsoleteFile) {
+        return resolveFile(directoryPath, obsoleteFile.origKey()).resolveSibling(obsoleteFile.filename());
+    }
+
+    private void indexObsoleteFile(Path directoryPath, Path obsoletePath) {
+        if (obsoleteIndex != null) {
+            obsoleteIndex.add(directoryPath, SoftDeleteHelper.parseObsolete(obsoletePath.getFileName().toString()));
+        }
+    }
+
+    private boolean documentExists(Path directoryPath, String key) {
+        if (keyIndex != null) {
+            return keyIndex.contains(directoryPath, key);
+        }
+        return Files.exists(resolveFile(directoryPath, key));
+    }
+
     @Override
     public void add(String directory, String key, String textContent, Charset charset) {
-        add(directory, key, path -> Files.writeString(path, textContent, charset));
+        run("add", directory, bytes -> add(directory, key, textWriter(textContent, charset), bytes));
     }
 
     @Override
     public void add(String directory, String key, byte[] binaryContent) {
-        add(directory, key, path -> Files.write(path, binaryContent));
+        run("add", directory, bytes -> add(directory, key, out -> out.write(binaryContent), bytes));
     }
 
-    private void add(String directory, String key, IOConsumer<Path> fileWriter) {
+    @Override
+    public void add(String directory, String key, InputStream inputStream) {
+        run("add", directory, bytes -> add(directory, key, inputStream::transferTo, bytes));
+    }
+
+    @Override
+    public void add(String directory, String key, ReadableByteChannel channel) {
+        run("add", directory, bytes -> add(directory, key, channelWriter(channel), bytes));
+    }
+
+    private void add(String directory, String key, ContentWriter contentWriter, ByteCounter bytes) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         validateKeySyntax(key);
         Path directoryPath = getOrCreateDirectory(directory);
-        Path filePath = directoryPath.resolve(key);
-        if (Files.exists(filePath)) {
-            throw new IllegalArgumentException("Document already exists: workspace='%s', directory='%s', key='%s'"
-                    .formatted(workspace, directory, key));
-        }
+        Path filePath = resolveFile(directoryPath, key);
+        DocumentLock keyLock = documentLock(directory, key, true);
+        keyLock.lock();
         try {
-            fileWriter.accept(filePath);
-        } catch (IOException e) {
-            throw new UncheckedIOException("Failed to write to the file: %s".formatted(filePath), e);
+            if (documentExists(directoryPath, key)) {
+                throw new IllegalArgumentException("Document already exists: workspace='%s', directory='%s', key='%s'"
+                        .formatted(workspace, directory, key));
+            }
+            try {
+                layout.createParent(filePath);
+                writeFile(directory, filePath, contentWriter);
+                countStoredBytes(bytes, filePath);
+            } catch (IOException e) {
+                discardFailedWrite(filePath, null, e);
+                throw new UncheckedIOException("Failed to write to the file: %s".formatted(filePath), e);
+            } finally {
+                invalidateCachedContent(filePath);
+            }
+            if (keyIndex != null) {
+                keyIndex.add(directoryPath, key);
+            }
+            if (periodIndex != null) {
+                periodIndex.add(directoryPath, key);
+            }
+        } finally {
+            keyLock.unlock();
         }
     }
 
     @Override
     public boolean put(String directory, String key, String textContent, Charset charset) {
-        return put(directory, key, path -> Files.writeString(path, textContent, charset));
+        return call("put", directory, bytes -> put(directory, key, textWriter(textContent, charset), bytes));
     }
 
     @Override
     public boolean put(String directory, String key, byte[] binaryContent) {
-        return put(directory, key, path -> Files.write(path, binaryContent));
+        return call("put", directory, bytes -> put(directory, key, out -> out.write(binaryContent), bytes));
     }
 
     @Override
     public boolean put(String directory, String key, Map<String, String> propertiesContent, Charset charset) {
-        return put(directory, key, path -> KeyValueFileUtils.writeMapToFile(propertiesContent, path.toFile(), charset));
+        return call("put", directory, bytes -> put(directory, key, out -> KeyValueFileUtils.writeMap(propertiesContent, out, charset), bytes));
     }
 
-    private boolean put(String directory, String key, IOConsumer<Path> fileWriter) {
+    @Override
+    public boolean put(String directory, String key, InputStream inputStream) {
+        return call("put", directory, bytes -> put(directory, key, inputStream::transferTo, bytes));
+    }
+
+    @Override
+    public boolean put(String directory, String key, ReadableByteChannel channel) {
+        return call("put", directory, bytes -> put(directory, key, channelWriter(channel), bytes));
+    }
+
+    private boolean put(String directory, String key, ContentWriter contentWriter, ByteCounter bytes) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         validateKeySyntax(key);
         Path directoryPath = getOrCreateDirectory(directory);
-        Path filePath = directoryPath.resolve(key);
-        boolean isNew = !Files.exists(filePath);
-        if (!isNew) {
-            Path overriddenPath = SoftDeleteHelper.contructOverriddenPath(filePath, LocalDateTime.now());
+        return putFile(directory, directoryPath, key, contentWriter, bytes);
+    }
+
+    private boolean putFile(String directory, Path directoryPath, String key, ContentWriter contentWriter, ByteCounter bytes) {
+        Path filePath = resolveFile(directoryPath, key);
+        DocumentLock keyLock = documentLock(directory, key, true);
+        keyLock.lock();
+        try {
+            boolean isNew = !documentExists(directoryPath, key);
+            Path overriddenPath = null;
+            if (!isNew) {
+                try {
+                    overriddenPath = SoftDeleteHelper.moveToObsolete(filePath, false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to move %s to an overridden version".formatted(filePath), e);
+                }
+            }
+            try {
+                layout.createParent(filePath);
+                writeFile(directory, filePath, contentWriter);
+                countStoredBytes(bytes, filePath);
+            } catch (IOException e) {
+                discardFailedWrite(filePath, overriddenPath, e);
+                throw new UncheckedIOException("Failed to write to the file: %s".formatted(filePath), e);
+            } finally {
+                invalidateCachedContent(filePath);
+            }
+            if (isNew && keyIndex != null) {
+                keyIndex.add(directoryPath, key);
+            }
+            if (isNew && periodIndex != null) {
+                periodIndex.add(directoryPath, key);
+            }
+            if (overriddenPath != null) {
+                indexObsoleteFile(directoryPath, overriddenPath);
+            }
+            return isNew;
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    private void writeFile(String directory, Path filePath, ContentWriter contentWriter) throws IOException {
+        Path targetPath = blobStore == null ? filePath : blobStore.newTempFile();
+        try {
+            if (compressed(directory)) {
+                try (OutputStream fileOut = Files.newOutputStream(targetPath);
+                     OutputStream out = compressionCodec.compress(fileOut)) {
+                    contentWriter.write(out);
+                }
+            } else {
+                contentWriter.write(targetPath);
+            }
+            if (blobStore != null) {
+                blobStore.linkAs(targetPath, filePath);
+            }
+        } finally {
+            if (blobStore != null) {
+                Files.deleteIfExists(targetPath);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached content and checksum of the file, called under the lock of its key by every write,
+     * so a stale checksum can't survive a write within the resolution of the last-modified time.
+     */
+    private void invalidateCachedContent(Path filePath) {
+        checksumCache.invalidateFile(filePath);
+        if (contentCache != null) {
+            contentCache.invalidate(filePath);
+        }
+    }
+
+    private static void countStoredBytes(ByteCounter bytes, Path filePath) throws IOException {
+        if (bytes.isEnabled()) {
+            bytes.add(Files.size(filePath));
+        }
+    }
+
+    private static ContentWriter textWriter(String textContent, Charset charset) {
+        return out -> {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(textContent));
+            out.write(encoded.array(), encoded.arrayOffset(), encoded.limit());
+        };
+    }
+
+    private static ContentWriter channelWriter(ReadableByteChannel channel) {
+        return new ContentWriter() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                while (channel.read(buffer) >= 0) {
+                    out.write(buffer.array(), 0, buffer.position());
+                    buffer.clear();
+                }
+            }
+
+            @Override
+            public void write(Path path) throws IOException {
+                transferFrom(channel, path);
+            }
+        };
+    }
+
+    private void deleteFile(Path filePath) throws IOException {
+        if (blobStore == null) {
+            Files.delete(filePath);
+        } else {
+            blobStore.delete(filePath);
+        }
+    }
+
+    @Override
+    public PutResult putIfChanged(String directory, String key, String textContent, Charset charset) {
+        byte[] binaryContent;
+        try {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(textContent));
+            binaryContent = Arrays.copyOfRange(encoded.array(), encoded.arrayOffset(), encoded.limit());
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Failed to encode the content: key=%s, charset=%s".formatted(key, charset), e);
+        }
+        return call("putIfChanged", directory, bytes -> putIfChanged(directory, key, binaryContent, bytes));
+    }
+
+    @Override
+    public PutResult putIfChanged(String directory, String key, Map<String, String> propertiesContent, Charset charset) {
+        byte[] binaryContent = KeyValueFileUtils.writeMapToBytes(propertiesContent, charset);
+        return call("putIfChanged", directory, bytes -> putIfChanged(directory, key, binaryContent, bytes));
+    }
+
+    @Override
+    public PutResult putIfChanged(String directory, String key, byte[] binaryContent) {
+        return call("putIfChanged", directory, bytes -> putIfChanged(directory, key, binaryContent, bytes));
+    }
+
+    private PutResult putIfChanged(String directory, String key, byte[] binaryContent, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        Path directoryPath = getOrCreateDirectory(directory);
+        Path filePath = resolveFile(directoryPath, key);
+        DocumentLock keyLock = documentLock(directory, key, true);
+        keyLock.lock();
+        try {
+            try {
+                if (documentExists(directoryPath, key) && checksumCache.contentEquals(filePath, binaryContent, compressed(directory))) {
+                    return PutResult.UNCHANGED;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the file %s".formatted(filePath), e);
+            }
+            boolean isNew = putFile(directory, directoryPath, key, out -> out.write(binaryContent), bytes);
             try {
-                Files.move(filePath, overriddenPath);
+                checksumCache.update(filePath, binaryContent);
             } catch (IOException e) {
-                throw new UncheckedIOException("Failed to move %s -> %s".formatted(filePath, overriddenPath), e);
+                throw new UncheckedIOException("Failed to read the file %s".formatted(filePath), e);
             }
+            return isNew ? PutResult.ADDED : PutResult.UPDATED;
+        } finally {
+            keyLock.unlock();
         }
+    }
+
+    /**
+     * Removes the partially written file and restores the overridden version, if any.
+     */
+    private static void discardFailedWrite(Path filePath, Path overriddenPath, IOException writeException) {
         try {
-            fileWriter.accept(filePath);
+            Files.deleteIfExists(filePath);
+            if (overriddenPath != null) {
+                Files.move(overriddenPath, filePath);
+            }
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to write to the file: %s".formatted(filePath), e);
+            writeException.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Copies the channel content to a new file chunk by chunk, letting the OS avoid user-space buffers where it can.
+     */
+    private static void transferFrom(ReadableByteChannel channel, Path path) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = fileChannel.transferFrom(channel, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                position += transferred;
+            }
         }
-        return isNew;
     }
 
     @Override
     public boolean exists(String directory, String key) {
+        return call("exists", directory, bytes -> fileExists(directory, key));
+    }
+
+    private boolean fileExists(String directory, String key) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         validateKeySyntax(key);
         Path directoryPath = workspacePath.resolve(directory);
+        if (keyIndex != null) {
+            return keyIndex.contains(directoryPath, key);
+        }
         if (!Files.exists(directoryPath)) {
             return false;
         } else if (!Files.isDirectory(directoryPath)) {
             throw new IllegalArgumentException("Not a directory: %s, workspace=%s".formatted(directoryPath, workspace));
         }
-        return Files.exists(directoryPath.resolve(key));
+        return Files.exists(resolveFile(directoryPath, key));
     }
 
     @Override
     public String getTextContent(String directory, String key, Charset charset) {
-        return getContent(directory, key, path -> Files.readString(path, charset));
+        return getContent("getTextContent", directory, key, cached(Representation.text(charset), path -> readString(directory, path, charset)));
     }
 
     @Override
     public String getTextContent(String directory, String key, Charset charset, Charset alternativeCharset) {
-        return getContent(directory, key, path -> {
+        return getContent("getTextContent", directory, key, path -> {
 
             List<Charset> charsets = new ArrayList<>();
             charsets.add(requireNonNull(charset));
@@ -247,7 +606,7 @@ public class FilesystemDmsImpl implements Dms {
             try {
                 for (Charset chs : charsets) {
                     try {
-                        return Files.readString(path, chs);
+                        return readString(directory, path, chs);
                     } catch (Throwable throwable) {
                         if (throwable instanceof CharacterCodingException characterCodingException) {
                             characterCodingExceptions.add(characterCodingException);
@@ -278,13 +637,13 @@ public class FilesystemDmsImpl implements Dms {
 
     @Override
     public List<String> getTextLines(String directory, String key, Charset charset) {
-        return getContent(directory, key, path -> Files.readAllLines(path, charset));
+        return getContent("getTextLines", directory, key, cached(Representation.lines(charset), path -> readAllLines(directory, path, charset)));
     }
 
     @Override
     public List<String> getTextLines(String directory, String key, int limit, Charset charset) {
-        return getContent(directory, key, path -> {
-            try (Stream<String> lines = Files.lines(path, charset)) {
+        return getContent("getTextLines", directory, key, path -> {
+            try (Stream<String> lines = lines(directory, path, charset)) {
                 return lines.limit(limit).toList();
             }
         });
@@ -292,7 +651,7 @@ public class FilesystemDmsImpl implements Dms {
 
     @Override
     public List<String> getTextLines(String directory, String key, int limit, Charset charset, Charset alternativeCharset) {
-        return getContent(directory, key, path -> {
+        return getContent("getTextLines", directory, key, path -> {
 
             List<Charset> charsets = new ArrayList<>();
             charsets.add(requireNonNull(charset));
@@ -303,7 +662,7 @@ public class FilesystemDmsImpl implements Dms {
             List<CharacterCodingException> characterCodingExceptions = new ArrayList<>();
             try {
                 for (Charset chs : charsets) {
-                    try (Stream<String> lines = Files.lines(path, chs)) {
+                    try (Stream<String> lines = lines(directory, path, chs)) {
                         return lines.limit(limit).toList();
                     } catch (Throwable throwable) {
                         if (throwable instanceof CharacterCodingException characterCodingException) {
@@ -335,44 +694,394 @@ public class FilesystemDmsImpl implements Dms {
 
     @Override
     public byte[] getBinaryContent(String directory, String key) {
-        return getContent(directory, key, Files::readAllBytes);
+        return getContent("getBinaryContent", directory, key, cached(Representation.BINARY, path -> readAllBytes(directory, path)));
+    }
+
+    @Override
+    public byte[] getBinaryContent(String directory, String key, long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=%s, length=%s".formatted(offset, length));
+        }
+        return getContent("getBinaryContent", directory, key, path -> {
+            if (compressed(directory) && compressionCodec.isCompressed(path)) {
+                try (InputStream inputStream = newInputStream(directory, path)) {
+                    try {
+                        inputStream.skipNBytes(offset);
+                    } catch (EOFException e) {
+                        return new byte[0];
+                    }
+                    return inputStream.readNBytes(length);
+                }
+            }
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long available = Math.max(0, fileChannel.size() - offset);
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, available));
+                long position = offset;
+                while (buffer.hasRemaining()) {
+                    int read = fileChannel.read(buffer, position);
+                    if (read < 0) {
+                        break;
+                    }
+                    position += read;
+                }
+                return buffer.hasRemaining() ? Arrays.copyOf(buffer.array(), buffer.position()) : buffer.array();
+            }
+        });
+    }
+
+    @Override
+    public ByteBuffer mapContent(String directory, String key) {
+        return getContent("mapContent", directory, key, path -> {
+            if (compressed(directory) && compressionCodec.isCompressed(path)) {
+                return ByteBuffer.wrap(readAllBytes(directory, path)).asReadOnlyBuffer();
+            }
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            }
+        });
+    }
+
+    @Override
+    public InputStream openInputStream(String directory, String key) {
+        return getContent("openInputStream", directory, key, path -> newInputStream(directory, path));
+    }
+
+    @Override
+    public Reader openReader(String directory, String key, Charset charset) {
+        return getContent("openReader", directory, key, path -> newBufferedReader(directory, path, charset));
+    }
+
+    @Override
+    public Stream<String> streamTextLines(String directory, String key, Charset charset) {
+        return getContent("streamTextLines", directory, key, path -> lines(directory, path, charset));
     }
 
     @Override
     public Map<String, String> getPropertiesContent(String directory, String key, Charset charset) {
-        return getContent(directory, key, path -> KeyValueFileUtils.readMapFromFile(path.toFile(), charset));
+        return getContent("getPropertiesContent", directory, key, cached(Representation.properties(charset), path -> readProperties(directory, path, charset)));
+    }
+
+    @Override
+    public String getProperty(String directory, String key, String propertyName, Charset charset) {
+        requireNonNull(propertyName);
+        return getContent("getProperty", directory, key, path -> {
+            if (contentCache != null) {
+                return contentCache.get(path, Representation.properties(charset), p -> readProperties(directory, p, charset), properties -> properties.get(propertyName));
+            }
+            return KeyValueFileUtils.readValue(ByteBuffer.wrap(readAllBytes(directory, path)), charset, propertyName);
+        });
+    }
+
+    private Map<String, String> readProperties(String directory, Path path, Charset charset) throws IOException {
+        return KeyValueFileUtils.readMap(ByteBuffer.wrap(readAllBytes(directory, path)), charset);
     }
 
     @Override
     public LocalDateTime getLastModifiedTime(String directory, String key) {
+        return call("getLastModifiedTime", directory, bytes -> findLastModifiedTime(directory, key));
+    }
+
+    private LocalDateTime findLastModifiedTime(String directory, String key) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         validateKeySyntax(key);
-        Path filePath = workspacePath.resolve(directory).resolve(key);
-        if (!Files.exists(filePath)) {
-            throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'".formatted(workspace, directory, key));
+        if (blobStore != null) {
+            throw new UnsupportedOperationException("Last modified time is not tracked with deduplication, the documents of the same content share it: workspace='%s', directory='%s', key='%s'"
+                    .formatted(workspace, directory, key));
         }
+        Path directoryPath = workspacePath.resolve(directory);
+        Path filePath = resolveFile(directoryPath, key);
+        DocumentLock keyLock = documentLock(directory, key, false);
+        keyLock.lock();
         try {
-            FileTime ft = Files.getLastModifiedTime(filePath);
-            return LocalDateTime.ofInstant(ft.toInstant(), ZoneId.systemDefault());
-        } catch (IOException e) {
-            throw new UncheckedIOException("Failed to get the last modified time %s".formatted(filePath), e);
+            if (!documentExists(directoryPath, key)) {
+                throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'".formatted(workspace, directory, key));
+            }
+            try {
+                FileTime ft = Files.getLastModifiedTime(filePath);
+                return LocalDateTime.ofInstant(ft.toInstant(), ZoneId.systemDefault());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to get the last modified time %s".formatted(filePath), e);
+            }
+        } finally {
+            keyLock.unlock();
         }
     }
 
-    private <CONTENT> CONTENT getContent(String directory, String key, IOFunction<Path, CONTENT> fileReader) {
+    /**
+     * Whether the documents of the directory may be stored compressed.
+     * Only their files are checked for the compression header, the files of the other directories are read as they are.
+     */
+    private boolean compressed(String directory) {
+        return compressionCodec != null && compressedDirectories.test(directory);
+    }
+
+    /**
+     * Opens the content of a document file, decompressing it if needed.
+     */
+    private InputStream newInputStream(String directory, Path path) throws IOException {
+        return compressed(directory) ? newDecompressingInputStream(path) : Files.newInputStream(path);
+    }
+
+    private InputStream newDecompressingInputStream(Path path) throws IOException {
+        InputStream inputStream = Files.newInputStream(path);
+        try {
+            return compressionCodec.decompress(inputStream);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    private byte[] readAllBytes(String directory, Path path) throws IOException {
+        if (!compressed(directory)) {
+            return Files.readAllBytes(path);
+        }
+        try (InputStream inputStream = newInputStream(directory, path)) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * Like {@link Files#readString(Path, Charset)}, throws {@link CharacterCodingException} on malformed input.
+     */
+    private String readString(String directory, Path path, Charset charset) throws IOException {
+        if (!compressed(directory)) {
+            return Files.readString(path, charset);
+        }
+        return charset.newDecoder().decode(ByteBuffer.wrap(readAllBytes(directory, path))).toString();
+    }
+
+    private BufferedReader newBufferedReader(String directory, Path path, Charset charset) throws IOException {
+        if (!compressed(directory)) {
+            return Files.newBufferedReader(path, charset);
+        }
+        return new BufferedReader(new InputStreamReader(newInputStream(directory, path), charset.newDecoder()));
+    }
+
+    private List<String> readAllLines(String directory, Path path, Charset charset) throws IOException {
+        if (!compressed(directory)) {
+            return Files.readAllLines(path, charset);
+        }
+        try (BufferedReader reader = newBufferedReader(directory, path, charset)) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    private Stream<String> lines(String directory, Path path, Charset charset) throws IOException {
+        if (!compressed(directory)) {
+            return Files.lines(path, charset);
+        }
+        BufferedReader reader = newBufferedReader(directory, path, charset);
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Serves the content from the {@link #contentCache} if enabled, loading it by the file reader on a miss.
+     */
+    private <CONTENT> IOFunction<Path, CONTENT> cached(Representation<CONTENT> representation, IOFunction<Path, CONTENT> fileReader) {
+        if (contentCache == null) {
+            return fileReader;
+        }
+        return path -> contentCache.get(path, representation, fileReader::apply);
+    }
+
+    private <CONTENT> CONTENT getContent(String operation, String directory, String key, IOFunction<Path, CONTENT> fileReader) {
+        return call(operation, directory, bytes -> {
+            validateWorkspaceNotDeleted();
+            validateDirectorySyntax(directory);
+            validateKeySyntax(key);
+            Path directoryPath = workspacePath.resolve(directory);
+            return readFile(directory, directoryPath, key, fileReader, bytes);
+        });
+    }
+
+    private <CONTENT> CONTENT readFile(String directory, Path directoryPath, String key, IOFunction<Path, CONTENT> fileReader, ByteCounter bytes) {
+        Path filePath = resolveFile(directoryPath, key);
+        DocumentLock keyLock = documentLock(directory, key, false);
+        keyLock.lock();
+        try {
+            if (!documentExists(directoryPath, key)) {
+                throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'".formatted(workspace, directory, key));
+            }
+            try {
+                countStoredBytes(bytes, filePath);
+                return fileReader.apply(filePath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the file %s".formatted(filePath), e);
+            }
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    @Override
+    public List<DocumentVersion> getVersions(String directory, String key) {
+        return call("getVersions", directory, bytes -> findVersions(directory, key));
+    }
+
+    private List<DocumentVersion> findVersions(String directory, String key) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         validateKeySyntax(key);
-        Path filePath = workspacePath.resolve(directory).resolve(key);
-        if (!Files.exists(filePath)) {
-            throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'".formatted(workspace, directory, key));
+        return findObsoleteFiles(workspacePath.resolve(directory), key)
+                .stream()
+                .map(f -> new DocumentVersion(f.obsoleteTime(), f.deleted() ? DocumentVersion.Kind.DELETED : DocumentVersion.Kind.OVERRIDDEN))
+                .toList();
+    }
+
+    @Override
+    public byte[] getVersionContent(String directory, String key, LocalDateTime obsoleteTime) {
+        return call("getVersionContent", directory, bytes -> getVersionContent(directory, key, obsoleteTime, bytes));
+    }
+
+    private byte[] getVersionContent(String directory, String key, LocalDateTime obsoleteTime, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        requireNonNull(obsoleteTime);
+        Path directoryPath = workspacePath.resolve(directory);
+        DocumentLock keyLock = documentLock(directory, key, false);
+        keyLock.lock();
+        try {
+            ObsoleteFile version = findObsoleteFiles(directoryPath, key)
+                    .stream()
+                    .filter(f -> f.obsoleteTime().equals(obsoleteTime))
+                    .reduce((first, second) -> second)
+                    .orElseThrow(() -> new IllegalArgumentException("Document version doesn't exist: workspace='%s', directory='%s', key='%s', obsoleteTime=%s"
+                            .formatted(workspace, directory, key, obsoleteTime)));
+            Path filePath = resolveObsoleteFile(directoryPath, version);
+            try {
+                countStoredBytes(bytes, filePath);
+                return readAllBytes(directory, filePath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the file %s".formatted(filePath), e);
+            }
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the obsolete files of the key, oldest first,
+     * from the {@link #obsoleteIndex} if enabled, otherwise by listing the directory.
+     */
+    private List<ObsoleteFile> findObsoleteFiles(Path directoryPath, String key) {
+        if (obsoleteIndex != null) {
+            return obsoleteIndex.find(directoryPath, key, null);
+        }
+        Path fileDirectoryPath = resolveFile(directoryPath, key).getParent();
+        if (!Files.isDirectory(fileDirectoryPath)) {
+            return Collections.emptyList();
         }
         try {
-            return fileReader.apply(filePath);
+            return listObsoleteFilesIn(fileDirectoryPath)
+                    .stream()
+                    .filter(f -> f.origKey().equals(key))
+                    .sorted()
+                    .toList();
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to read the file %s".formatted(filePath), e);
+            throw new UncheckedIOException("Failed to list files at path: %s".formatted(fileDirectoryPath), e);
+        }
+    }
+
+    @Override
+    public ContentCacheStats getContentCacheStats() {
+        return contentCache != null ? contentCache.getStats() : null;
+    }
+
+    @Override
+    public SequencedMap<String, Boolean> putAllTextContent(String directory, Map<String, String> textContents, Charset charset) {
+        requireNonNull(charset);
+        return call("putAllTextContent", directory, bytes ->
+                putAll(directory, textContents, textContent -> textWriter(textContent, charset), bytes));
+    }
+
+    @Override
+    public SequencedMap<String, Boolean> putAllBinaryContent(String directory, Map<String, byte[]> binaryContents) {
+        return call("putAllBinaryContent", directory, bytes ->
+                putAll(directory, binaryContents, binaryContent -> out -> out.write(binaryContent), bytes));
+    }
+
+    private <CONTENT> SequencedMap<String, Boolean> putAll(
+            String directory,
+            Map<String, CONTENT> contents,
+            Function<CONTENT, ContentWriter> contentWriterFnc,
+            ByteCounter bytes
+    ) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : contents.keySet()) {
+            validateKeySyntax(key);
         }
+        if (contents.isEmpty()) {
+            return Collections.emptySortedMap();
+        }
+        Path directoryPath = getOrCreateDirectory(directory);
+        return forEachKeyInParallel(contents.keySet(), executor, batchConcurrency, key -> putFile(directory, directoryPath, key, contentWriterFnc.apply(contents.get(key)), bytes));
+    }
+
+    @Override
+    public SequencedMap<String, String> getAllTextContent(String directory, Collection<String> keys, Charset charset) {
+        requireNonNull(charset);
+        return call("getAllTextContent", directory, bytes -> getAll(directory, keys, cached(Representation.text(charset), path -> readString(directory, path, charset)), bytes));
+    }
+
+    @Override
+    public SequencedMap<String, byte[]> getAllBinaryContent(String directory, Collection<String> keys) {
+        return call("getAllBinaryContent", directory, bytes -> getAll(directory, keys, cached(Representation.BINARY, path -> readAllBytes(directory, path)), bytes));
+    }
+
+    private <CONTENT> SequencedMap<String, CONTENT> getAll(String directory, Collection<String> keys, IOFunction<Path, CONTENT> fileReader, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : keys) {
+            validateKeySyntax(key);
+        }
+        Path directoryPath = workspacePath.resolve(directory);
+        return forEachKeyInParallel(keys, executor, batchConcurrency, key -> readFile(directory, directoryPath, key, fileReader, bytes));
+    }
+
+    @Override
+    public SequencedMap<String, Boolean> existsAll(String directory, Collection<String> keys) {
+        return call("existsAll", directory, bytes -> filesExist(directory, keys));
+    }
+
+    private SequencedMap<String, Boolean> filesExist(String directory, Collection<String> keys) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : keys) {
+            validateKeySyntax(key);
+        }
+        Path directoryPath = workspacePath.resolve(directory);
+        if (keyIndex != null) {
+            SequencedMap<String, Boolean> results = new LinkedHashMap<>();
+            for (String key : keys) {
+                results.put(key, keyIndex.contains(directoryPath, key));
+            }
+            return results;
+        }
+        if (!Files.exists(directoryPath)) {
+            SequencedMap<String, Boolean> results = new LinkedHashMap<>();
+            for (String key : keys) {
+                results.put(key, false);
+            }
+            return results;
+        } else if (!Files.isDirectory(directoryPath)) {
+            throw new IllegalArgumentException("Not a directory: %s, workspace=%s".formatted(directoryPath, workspace));
+        }
+        return forEachKeyInParallel(keys, executor, batchConcurrency, key -> Files.exists(resolveFile(directoryPath, key)));
     }
 
     @Override
@@ -382,22 +1091,42 @@ public class FilesystemDmsImpl implements Dms {
 
     @Override
     public void delete(String directory, Collection<String> keys) {
+        run("delete", directory, bytes -> deleteFiles(directory, keys));
+    }
+
+    private void deleteFiles(String directory, Collection<String> keys) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         for (String key : keys) {
             validateKeySyntax(key);
         }
+        Path directoryPath = workspacePath.resolve(directory);
         for (String key : keys) {
-            Path filePath = workspacePath.resolve(directory).resolve(key);
-            if (!Files.exists(filePath)) {
-                throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'"
-                        .formatted(workspace, directory, key));
-            }
-            Path newSoftDelPath = SoftDeleteHelper.contructSoftDeletedPath(filePath, LocalDateTime.now());
+            Path filePath = resolveFile(directoryPath, key);
+            DocumentLock keyLock = documentLock(directory, key, true);
+            keyLock.lock();
             try {
-                Files.move(filePath, newSoftDelPath);
-            } catch (IOException e) {
-                throw new UncheckedIOException("Failed to move %s -> %s".formatted(filePath, newSoftDelPath), e);
+                if (!documentExists(directoryPath, key)) {
+                    throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'"
+                            .formatted(workspace, directory, key));
+                }
+                Path newSoftDelPath;
+                try {
+                    newSoftDelPath = SoftDeleteHelper.moveToObsolete(filePath, true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to move %s to a deleted version".formatted(filePath), e);
+                } finally {
+                    invalidateCachedContent(filePath);
+                }
+                if (keyIndex != null) {
+                    keyIndex.remove(directoryPath, key);
+                }
+                if (periodIndex != null) {
+                    periodIndex.remove(directoryPath, key);
+                }
+                indexObsoleteFile(directoryPath, newSoftDelPath);
+            } finally {
+                keyLock.unlock();
             }
         }
     }
@@ -408,24 +1137,62 @@ public class FilesystemDmsImpl implements Dms {
             Function<String, KEY> keyFnc,
             Function<KEY, LocalDate> keyStartDateInclFnc,
             Function<KEY, LocalDate> keyEndDateInclFnc) {
-        SequencedCollection<String> rawKeys = getKeys(directory);
+        return call("getRedundantPeriodKeys", directory, bytes ->
+                findRedundantPeriodKeys(directory, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc));
+    }
+
+    private <KEY> SequencedMap<KEY, String> findRedundantPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc) {
+        if (periodIndex != null) {
+            validateWorkspaceNotDeleted();
+            validateDirectorySyntax(directory);
+            return periodIndex.getRedundantKeys(workspacePath.resolve(directory), keyFnc, keyStartDateInclFnc, keyEndDateInclFnc,
+                    () -> findKeys(directory));
+        }
+        SequencedCollection<String> rawKeys = findKeys(directory);
         if (rawKeys.isEmpty()) {
             return Collections.emptySortedMap();
         }
-        SequencedMap<KEY, String> keys = new LinkedHashMap<>();
-        for (String rawKey : rawKeys) {
-            KEY key = keyFnc.apply(rawKey);
-            if (key != null) {
-                if (keys.put(key, rawKey) != null) {
-                    throw new IllegalStateException("Duplicate key: %s, %s".formatted(rawKey, key));
-                }
-            }
-        }
-        SequencedSet<KEY> redundantKeys = getRedundantPeriodKeys(keys.keySet(), keyStartDateInclFnc, keyEndDateInclFnc);
+        SequencedMap<KEY, String> keys = PeriodDocUtils.parseKeys(rawKeys, keyFnc);
+        SequencedSet<KEY> redundantKeys = PeriodDocUtils.findRedundantKeys(keys.keySet(), keyStartDateInclFnc, keyEndDateInclFnc);
         keys.keySet().retainAll(redundantKeys);
         return keys;
     }
 
+    @Override
+    public <KEY> PeriodCoverage<KEY> getCoveringPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    ) {
+        return call("getCoveringPeriodKeys", directory, bytes ->
+                findCoveringPeriodKeys(directory, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc, startDateIncl, endDateIncl));
+    }
+
+    private <KEY> PeriodCoverage<KEY> findCoveringPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    ) {
+        if (periodIndex != null) {
+            validateWorkspaceNotDeleted();
+            validateDirectorySyntax(directory);
+            return periodIndex.getCoveringKeys(workspacePath.resolve(directory), keyFnc, keyStartDateInclFnc, keyEndDateInclFnc,
+                    startDateIncl, endDateIncl, () -> findKeys(directory));
+        }
+        SequencedMap<KEY, String> keys = PeriodDocUtils.parseKeys(findKeys(directory), keyFnc);
+        return PeriodDocUtils.findCoveringKeys(keys, keyStartDateInclFnc, keyEndDateInclFnc, startDateIncl, endDateIncl);
+    }
+
     @Override
     public <KEY> SequencedSet<KEY> getRedundantPeriodKeys(
             Collection<KEY> keys,
@@ -437,6 +1204,10 @@ public class FilesystemDmsImpl implements Dms {
 
     @Override
     public int purge(String directory, String origKey, LocalDateTime softDeletedBefore) {
+        return call("purge", directory, bytes -> purgeFiles(directory, origKey, softDeletedBefore));
+    }
+
+    private int purgeFiles(String directory, String origKey, LocalDateTime softDeletedBefore) {
         validateWorkspaceNotDeleted();
         validateDirectorySyntax(directory);
         if (origKey != null) {
@@ -448,29 +1219,107 @@ public class FilesystemDmsImpl implements Dms {
         } else if (!Files.isDirectory(directoryPath)) {
             throw new IllegalArgumentException("Not a directory: %s, workspace=%s".formatted(directoryPath, workspace));
         }
-        List<Path> filesToHardDelete;
-        try (Stream<Path> fileStream = Files.list(directoryPath)) {
-            filesToHardDelete = fileStream
-                    .filter(p -> SoftDeleteHelper.isObsolete(p.getFileName().toString(), origKey, softDeletedBefore))
-                    .toList();
+        if (obsoleteIndex != null) {
+            return purgeIndexed(directory, directoryPath, origKey, softDeletedBefore);
+        }
+        List<Path> filesToHardDelete = new ArrayList<>();
+        try {
+            List<Path> fileDirectoryPaths = origKey != null
+                    ? List.of(resolveFile(directoryPath, origKey).getParent())
+                    : layout.listFileDirectories(directoryPath);
+            for (Path fileDirectoryPath : fileDirectoryPaths) {
+                if (!Files.isDirectory(fileDirectoryPath)) {
+                    continue;
+                }
+                try (Stream<Path> fileStream = Files.list(fileDirectoryPath)) {
+                    fileStream
+                            .filter(p -> SoftDeleteHelper.isObsolete(p.getFileName().toString(), origKey, softDeletedBefore))
+                            .forEach(filesToHardDelete::add);
+                }
+            }
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to list files at path: %s".formatted(directoryPath), e);
         }
+        int purged = 0;
         for (Path fileToHardDelete : filesToHardDelete) {
-            try {
-                LOG.info("Hard deleting: {}", fileToHardDelete);
-                Files.delete(fileToHardDelete);
-            } catch (IOException e) {
-                throw new UncheckedIOException("Failed to delete: %s".formatted(fileToHardDelete), e);
+            String fileOrigKey = SoftDeleteHelper.parseObsolete(fileToHardDelete.getFileName().toString()).origKey();
+            if (purgeFile(directory, fileOrigKey, fileToHardDelete)) {
+                purged++;
             }
         }
-        return filesToHardDelete.size();
+        return purged;
+    }
+
+    /**
+     * Hard-deletes only the files found by a range scan of the {@link #obsoleteIndex}.
+     * Files already removed by someone else are skipped and not counted.
+     */
+    private int purgeIndexed(String directory, Path directoryPath, String origKey, LocalDateTime softDeletedBefore) {
+        int purged = 0;
+        for (ObsoleteFile obsoleteFile : obsoleteIndex.find(directoryPath, origKey, softDeletedBefore)) {
+            if (purgeFile(directory, obsoleteFile.origKey(), resolveObsoleteFile(directoryPath, obsoleteFile))) {
+                purged++;
+            }
+            obsoleteIndex.remove(directoryPath, obsoleteFile);
+        }
+        return purged;
+    }
+
+    /**
+     * Hard-deletes a deleted or overridden version under the lock of its key,
+     * so a concurrent reader of the version either reads it whole or doesn't find it.
+     * Returns false if the file was already removed by someone else.
+     */
+    private boolean purgeFile(String directory, String origKey, Path fileToHardDelete) {
+        DocumentLock keyLock = documentLock(directory, origKey, true);
+        keyLock.lock();
+        try {
+            LOG.info("Hard deleting: {}", fileToHardDelete);
+            deleteFile(fileToHardDelete);
+            return true;
+        } catch (NoSuchFileException e) {
+            LOG.warn("Already hard deleted: {}", fileToHardDelete);
+            return false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete: %s".formatted(fileToHardDelete), e);
+        } finally {
+            invalidateCachedContent(fileToHardDelete);
+            keyLock.unlock();
+        }
+    }
+
+    @Override
+    public void refresh(String directory) {
+        run("refresh", directory, bytes -> invalidate(directory));
+    }
+
+    private void invalidate(String directory) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        Path directoryPath = workspacePath.resolve(directory);
+        if (keyIndex != null) {
+            keyIndex.invalidate(directoryPath);
+        }
+        if (obsoleteIndex != null) {
+            obsoleteIndex.invalidate(directoryPath);
+        }
+        if (periodIndex != null) {
+            periodIndex.invalidate(directoryPath);
+        }
+        checksumCache.invalidate(directoryPath);
+        if (contentCache != null) {
+            contentCache.invalidateDirectory(directoryPath);
+        }
     }
 
     @Override
     public void resetWorkspace() {
+        runExclusively("resetWorkspace", this::recreateWorkspace);
+    }
+
+    private void recreateWorkspace() {
         if (!workspaceDeleted) {
-            deleteWorkspace();
+            moveWorkspaceToDeleted();
         }
         try {
             Files.createDirectory(workspacePath);
@@ -482,18 +1331,38 @@ public class FilesystemDmsImpl implements Dms {
 
     @Override
     public void deleteWorkspace() {
+        runExclusively("deleteWorkspace", this::moveWorkspaceToDeleted);
+    }
+
+    private void moveWorkspaceToDeleted() {
         validateWorkspaceNotDeleted();
-        Path newSoftDelWorkspacePath = SoftDeleteHelper.contructSoftDeletedPath(workspacePath, LocalDateTime.now());
         try {
-            Files.move(workspacePath, newSoftDelWorkspacePath);
+            SoftDeleteHelper.moveToObsolete(workspacePath, true);
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to move %s -> %s".formatted(workspacePath, newSoftDelWorkspacePath), e);
+            throw new UncheckedIOException("Failed to move %s to a deleted version".formatted(workspacePath), e);
         }
         workspaceDeleted = true;
+        if (keyIndex != null) {
+            keyIndex.invalidateAll();
+        }
+        if (obsoleteIndex != null) {
+            obsoleteIndex.invalidateAll();
+        }
+        if (periodIndex != null) {
+            periodIndex.invalidateAll();
+        }
+        checksumCache.invalidateAll();
+        if (contentCache != null) {
+            contentCache.invalidateAll();
+        }
     }
 
     @Override
     public int purgeWorkspace(LocalDateTime softDeletedBefore) {
+        return call("purgeWorkspace", null, bytes -> purgeWorkspaceVersions(softDeletedBefore));
+    }
+
+    private int purgeWorkspaceVersions(LocalDateTime softDeletedBefore) {
         try (Stream<Path> workspaces = Files.list(workspacePath.getParent())) {
             List<Path> obsoleteWorkspaceVersions = workspaces
                     .filter(ws -> SoftDeleteHelper.isObsolete(ws.getFileName().toString(), workspace, softDeletedBefore))
@@ -505,7 +1374,11 @@ public class FilesystemDmsImpl implements Dms {
                             .peek(f -> LOG.info("Recursively hard-deleting: {} ", f))
                             .forEach(path -> {
                                 try {
-                                    Files.delete(path);
+                                    if (Files.isDirectory(path)) {
+                                        Files.delete(path);
+                                    } else {
+                                        deleteFile(path);
+                                    }
                                 } catch (IOException e) {
                                     throw new UncheckedIOException(e);
                                 }
@@ -514,6 +1387,12 @@ public class FilesystemDmsImpl implements Dms {
                     throw new UncheckedIOException(e);
                 }
             }
+            if (blobStore != null) {
+                int orphans = blobStore.deleteOrphans();
+                if (orphans > 0) {
+                    LOG.info("Hard deleted {} unreferenced blobs", orphans);
+                }
+            }
             return obsoleteWorkspaceVersions.size();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -534,27 +1413,52 @@ public class FilesystemDmsImpl implements Dms {
         return directoryPath;
     }
 
-    private void validateWorkspaceNotDeleted() {
-        if (workspaceDeleted) {
-            throw new IllegalStateException("Workspace already deleted - '%s'".formatted(workspace));
-        }
+    /**
+     * Returns the lock of the document, combined with the cross-process lock of its directory if enabled.
+     */
+    private DocumentLock documentLock(String directory, String key, boolean exclusive) {
+        ReadWriteLock keyLock = keyLocks.get(directory, key);
+        Lock lock = exclusive ? keyLock.writeLock() : keyLock.readLock();
+        return directoryLocks != null ? directoryLocks.guard(lock, directory, exclusive) : DocumentLock.of(lock);
     }
 
-    private void validateWorkspaceSyntax(String workspaceName) {
-        if (workspaceName == null || workspaceName.isBlank()) {
-            throw new IllegalArgumentException("Invalid workspace: %s".formatted(workspaceName));
-        }
+    /**
+     * Observes an operation running under the shared workspace lock, the observed duration includes waiting for the lock.
+     */
+    private <RESULT> RESULT call(String operation, String directory, Function<ByteCounter, RESULT> action) {
+        return operationObserver.call(operation, directory, bytes -> {
+            Lock lock = workspaceLock.readLock();
+            lock.lock();
+            try {
+                return action.apply(bytes);
+            } finally {
+                lock.unlock();
+            }
+        });
     }
 
-    private void validateDirectorySyntax(String directoryName) {
-        if (directoryName == null || directoryName.isBlank()) {
-            throw new IllegalArgumentException("Invalid directory: %s".formatted(directoryName));
-        }
+    private void run(String operation, String directory, Consumer<ByteCounter> action) {
+        call(operation, directory, bytes -> {
+            action.accept(bytes);
+            return null;
+        });
     }
 
-    private void validateKeySyntax(String keyName) {
-        if (keyName == null || keyName.isBlank()) {
-            throw new IllegalArgumentException("Invalid key: %s".formatted(keyName));
+    private void runExclusively(String operation, Runnable action) {
+        operationObserver.run(operation, null, bytes -> {
+            Lock lock = workspaceLock.writeLock();
+            lock.lock();
+            try {
+                action.run();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void validateWorkspaceNotDeleted() {
+        if (workspaceDeleted) {
+            throw new IllegalStateException("Workspace already deleted - '%s'".formatted(workspace));
         }
     }
 
@@ -0,0 +1,120 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.DmsConfig;
+import com.brinvex.util.dms.impl.SoftDeleteHelper.ObsoleteFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Converts an existing workspace of the filesystem storage between the flat and the hashed layout,
+ * see {@link DmsConfig#hashedLayoutEnabled()}. The documents and their deleted and overridden versions are renamed in place.
+ * <p>
+ * No {@link FilesystemDmsImpl} may use the workspace during the migration.
+ * An interrupted migration can be simply run again, the files already converted are skipped.
+ * <p>
+ * Usage: {@code java ... FilesystemLayoutMigration <basePath> <workspace> hashed|flat}
+ */
+public class FilesystemLayoutMigration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FilesystemLayoutMigration.class);
+
+    private FilesystemLayoutMigration() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3 || !Set.of("hashed", "flat").contains(args[2])) {
+            System.err.println("Usage: FilesystemLayoutMigration <basePath> <workspace> hashed|flat");
+            System.exit(1);
+        }
+        int moved = migrate(Path.of(args[0]), args[1], args[2].equals("hashed"));
+        System.out.println("Moved files: " + moved);
+    }
+
+    /**
+     * Moves the files of all the directories of the workspace to the hashed or the flat layout
+     * and returns the number of moved files.
+     */
+    public static int migrate(Path basePath, String workspace, boolean hashed) {
+        Path workspacePath = basePath.resolve(workspace);
+        if (!Files.isDirectory(workspacePath)) {
+            throw new IllegalArgumentException("Workspace is not a directory: %s".formatted(workspacePath));
+        }
+        List<Path> filePaths = new ArrayList<>();
+        List<Path> shardPaths = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(workspacePath)) {
+            paths.forEach(path -> {
+                if (Files.isRegularFile(path)) {
+                    filePaths.add(path);
+                } else if (!path.equals(workspacePath) && DirectoryLayout.isShardName(path.getFileName().toString())) {
+                    shardPaths.add(path);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list files at path: %s".formatted(workspacePath), e);
+        }
+        int moved = 0;
+        for (Path filePath : filePaths) {
+            Path directoryPath = directoryOf(filePath);
+            if (directoryPath.equals(workspacePath)) {
+                continue;
+            }
+            DirectoryLayout layout = hashed ? DirectoryLayout.HASHED : DirectoryLayout.FLAT;
+            Path targetPath = layout.resolve(directoryPath, keyOf(filePath)).resolveSibling(filePath.getFileName());
+            if (targetPath.equals(filePath)) {
+                continue;
+            }
+            try {
+                Files.createDirectories(targetPath.getParent());
+                Files.move(filePath, targetPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to move %s to %s".formatted(filePath, targetPath), e);
+            }
+            moved++;
+        }
+        if (!hashed) {
+            deleteEmptyShards(shardPaths);
+        }
+        LOG.info("Migrated workspace {} to the {} layout, moved files: {}", workspacePath, hashed ? "hashed" : "flat", moved);
+        return moved;
+    }
+
+    /**
+     * Deletes the shards left empty, also by purging.
+     */
+    private static void deleteEmptyShards(List<Path> shardPaths) {
+        for (Path shardPath : shardPaths.reversed()) {
+            try {
+                Files.deleteIfExists(shardPath);
+            } catch (DirectoryNotEmptyException e) {
+                LOG.warn("Not deleting a non-empty shard: {}", shardPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete: %s".formatted(shardPath), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the logical directory of the file, the parent of its shard in the hashed layout.
+     * The logical directories never have a shard name, see {@link DirectoryLayout}.
+     */
+    private static Path directoryOf(Path filePath) {
+        Path parentPath = filePath.getParent();
+        return DirectoryLayout.isShardName(parentPath.getFileName().toString()) ? parentPath.getParent() : parentPath;
+    }
+
+    private static String keyOf(Path filePath) {
+        String filename = filePath.getFileName().toString();
+        ObsoleteFile obsoleteFile = SoftDeleteHelper.parseObsolete(filename);
+        return obsoleteFile != null ? obsoleteFile.origKey() : filename;
+    }
+}
@@ -0,0 +1,77 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.KeyQuery;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory sorted index of the live keys of each directory.
+ * A directory is loaded lazily on first access, afterwards it is kept current
+ * by the write operations of {@link FilesystemDmsImpl}.
+ */
+class KeyIndex {
+
+    interface KeyLoader {
+        Collection<String> load(Path directoryPath) throws IOException;
+    }
+
+    private final Map<Path, NavigableSet<String>> directoryToKeys = new ConcurrentHashMap<>();
+
+    private final KeyLoader keyLoader;
+
+    KeyIndex(KeyLoader keyLoader) {
+        this.keyLoader = keyLoader;
+    }
+
+    List<String> getKeys(Path directoryPath) {
+        return List.copyOf(getOrLoad(directoryPath));
+    }
+
+    List<String> getKeys(Path directoryPath, KeyQuery query) {
+        return KeyQueries.select(getOrLoad(directoryPath), query);
+    }
+
+    boolean contains(Path directoryPath, String key) {
+        return getOrLoad(directoryPath).contains(key);
+    }
+
+    void add(Path directoryPath, String key) {
+        directoryToKeys.computeIfPresent(directoryPath, (dir, keys) -> {
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    void remove(Path directoryPath, String key) {
+        directoryToKeys.computeIfPresent(directoryPath, (dir, keys) -> {
+            keys.remove(key);
+            return keys;
+        });
+    }
+
+    void invalidate(Path directoryPath) {
+        directoryToKeys.remove(directoryPath);
+    }
+
+    void invalidateAll() {
+        directoryToKeys.clear();
+    }
+
+    private NavigableSet<String> getOrLoad(Path directoryPath) {
+        return directoryToKeys.computeIfAbsent(directoryPath, dir -> {
+            try {
+                return new ConcurrentSkipListSet<>(keyLoader.load(dir));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list files at path: %s".formatted(dir), e);
+            }
+        });
+    }
+}
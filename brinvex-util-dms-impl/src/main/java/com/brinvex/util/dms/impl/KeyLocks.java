@@ -0,0 +1,38 @@
+package com.brinvex.util.dms.impl;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped read/write locks of the documents, selected by a hash of the directory and the key.
+ * The documents sharing a stripe are serialized too, which is rare with enough stripes,
+ * and the memory stays bounded regardless of the number of documents.
+ */
+class KeyLocks {
+
+    private final ReadWriteLock[] stripes;
+
+    private final int mask;
+
+    /**
+     * @param stripeCount a power of two
+     */
+    KeyLocks(int stripeCount) {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Invalid stripeCount: %s".formatted(stripeCount));
+        }
+        this.stripes = new ReadWriteLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    ReadWriteLock get(String directory, String key) {
+        int h = 31 * directory.hashCode() + key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return stripes[h & mask];
+    }
+}
@@ -0,0 +1,87 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.KeyQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+
+/**
+ * Evaluation of a {@link KeyQuery}, either by a range scan of sorted keys,
+ * or by a single pass over unsorted keys keeping only the lowest matches.
+ */
+class KeyQueries {
+
+    /**
+     * Seeks to the lowest possible key and stops at the first key beyond the range or the prefix,
+     * so only the selected keys are visited.
+     */
+    static List<String> select(NavigableSet<String> sortedKeys, KeyQuery query) {
+        String lowerBound = query.from();
+        boolean lowerInclusive = true;
+        if (query.after() != null && (lowerBound == null || query.after().compareTo(lowerBound) >= 0)) {
+            lowerBound = query.after();
+            lowerInclusive = false;
+        }
+        if (query.prefix() != null && (lowerBound == null || query.prefix().compareTo(lowerBound) > 0)) {
+            lowerBound = query.prefix();
+            lowerInclusive = true;
+        }
+        NavigableSet<String> candidates = lowerBound == null ? sortedKeys : sortedKeys.tailSet(lowerBound, lowerInclusive);
+        List<String> result = new ArrayList<>();
+        for (String key : candidates) {
+            if (result.size() >= query.limit()
+                || (query.to() != null && key.compareTo(query.to()) >= 0)
+                || (query.prefix() != null && !key.startsWith(query.prefix()))) {
+                break;
+            }
+            if (query.matches(key)) {
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Collects the matching keys in ascending order,
+     * keeping at most {@link KeyQuery#limit()} of them in memory while scanning.
+     */
+    static class Collector {
+
+        private final KeyQuery query;
+
+        private final PriorityQueue<String> highestFirst;
+
+        private final List<String> all;
+
+        Collector(KeyQuery query) {
+            this.query = query;
+            boolean limited = query.limit() != Integer.MAX_VALUE;
+            this.highestFirst = limited ? new PriorityQueue<>(Comparator.reverseOrder()) : null;
+            this.all = limited ? null : new ArrayList<>();
+        }
+
+        /**
+         * Accepts a key already matching the query.
+         */
+        void accept(String key) {
+            if (all != null) {
+                all.add(key);
+            } else if (highestFirst.size() < query.limit()) {
+                highestFirst.add(key);
+            } else if (key.compareTo(highestFirst.peek()) < 0) {
+                highestFirst.poll();
+                highestFirst.add(key);
+            }
+        }
+
+        List<String> result() {
+            List<String> result = all != null ? all : new ArrayList<>(highestFirst);
+            Collections.sort(result);
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
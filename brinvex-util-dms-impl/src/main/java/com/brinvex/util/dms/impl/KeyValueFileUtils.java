@@ -1,51 +1,159 @@
 package com.brinvex.util.dms.impl;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Codec of the properties documents: one {@code key=value} entry per line, lines starting with {@code #} are ignored.
+ * <p>
+ * The content is parsed in a single pass over the bytes, only the keys and values are decoded into strings.
+ * This relies on the line breaks, {@code =} and {@code #} being single ASCII bytes which never occur inside
+ * a multi-byte character, true for UTF-8 and the single-byte charsets.
+ * Other charsets are transcoded to UTF-8 first.
+ */
 class KeyValueFileUtils {
 
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
     /**
-     * Writes a Map to a text file. Each entry is written as key=value.
+     * Writes a Map to a stream. Each entry is written as key=value.
+     * The stream is flushed but not closed.
      */
-    public static void writeMapToFile(Map<String, String> map, File file, Charset charset) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, charset))) {
-            for (Map.Entry<String, String> entry : map.entrySet()) {
-                writer.write(entry.getKey() + "=" + entry.getValue());
-                writer.newLine();
-            }
+    public static void writeMap(Map<String, String> map, OutputStream out, Charset charset) throws IOException {
+        out.write(writeMapToBytes(map, charset));
+        out.flush();
+    }
+
+    /**
+     * Writes a Map to a byte array, in the same format as {@link #writeMap(Map, OutputStream, Charset)},
+     * encoding the whole content at once from a pre-sized buffer.
+     */
+    public static byte[] writeMapToBytes(Map<String, String> map, Charset charset) {
+        int length = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            length += String.valueOf(entry.getKey()).length() + String.valueOf(entry.getValue()).length() + 1 + LINE_SEPARATOR.length();
+        }
+        StringBuilder content = new StringBuilder(length);
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            content.append(entry.getKey()).append('=').append(entry.getValue()).append(LINE_SEPARATOR);
         }
+        return content.toString().getBytes(charset);
     }
 
     /**
-     * Reads a Map from a text file. Each line should be formatted as key=value.
+     * Reads a Map from the remaining bytes of the buffer, which may be a mapped file.
+     * Each line should be formatted as key=value.
      */
-    public static Map<String, String> readMapFromFile(File file, Charset charset) throws IOException {
+    public static Map<String, String> readMap(ByteBuffer content, Charset charset) {
+        if (!isAsciiCompatible(charset)) {
+            content = transcodeToUtf8(content, charset);
+            charset = UTF_8;
+        }
         Map<String, String> map = new LinkedHashMap<>();
+        int end = content.limit();
+        for (int lineStart = content.position(); lineStart < end; ) {
+            int lineEnd = lineEnd(content, lineStart, end);
+            if (content.get(lineStart) != '#') {
+                int separator = separator(content, lineStart, lineEnd, charset);
+                map.put(decode(content, lineStart, separator, charset), decode(content, separator + 1, lineEnd, charset));
+            }
+            lineStart = nextLineStart(content, lineEnd, end);
+        }
+        return map;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file, charset))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    continue;
-                }
-                String[] parts = line.split("=", 2);
-                if (parts.length >= 2) {
-                    String key = parts[0];
-                    String value = parts[1];
-                    map.put(key, value);
-                } else {
-                    throw new IllegalStateException("Invalid line: " + line);
+    /**
+     * Returns the value of the given key, like {@code readMap(content, charset).get(key)},
+     * but decodes only the value, without creating the map.
+     */
+    public static String readValue(ByteBuffer content, Charset charset, String key) {
+        if (!isAsciiCompatible(charset)) {
+            content = transcodeToUtf8(content, charset);
+            charset = UTF_8;
+        }
+        byte[] encodedKey = key.getBytes(charset);
+        int valueStart = -1;
+        int valueEnd = -1;
+        int end = content.limit();
+        for (int lineStart = content.position(); lineStart < end; ) {
+            int lineEnd = lineEnd(content, lineStart, end);
+            if (content.get(lineStart) != '#') {
+                int separator = separator(content, lineStart, lineEnd, charset);
+                if (regionEquals(content, lineStart, separator, encodedKey)) {
+                    valueStart = separator + 1;
+                    valueEnd = lineEnd;
                 }
             }
+            lineStart = nextLineStart(content, lineEnd, end);
         }
-        return map;
+        return valueStart < 0 ? null : decode(content, valueStart, valueEnd, charset);
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return charset.equals(UTF_8)
+               || charset.equals(US_ASCII)
+               || charset.equals(ISO_8859_1)
+               || name.startsWith("ISO-8859-")
+               || name.startsWith("windows-125");
+    }
+
+    private static ByteBuffer transcodeToUtf8(ByteBuffer content, Charset charset) {
+        return ByteBuffer.wrap(charset.decode(content.duplicate()).toString().getBytes(UTF_8));
+    }
+
+    private static int lineEnd(ByteBuffer content, int from, int end) {
+        for (int i = from; i < end; i++) {
+            byte b = content.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int nextLineStart(ByteBuffer content, int lineEnd, int end) {
+        if (lineEnd < end && content.get(lineEnd) == '\r' && lineEnd + 1 < end && content.get(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    private static int separator(ByteBuffer content, int lineStart, int lineEnd, Charset charset) {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (content.get(i) == '=') {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Invalid line: " + decode(content, lineStart, lineEnd, charset));
+    }
+
+    private static boolean regionEquals(ByteBuffer content, int from, int to, byte[] bytes) {
+        if (to - from != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (content.get(from + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer content, int from, int to, Charset charset) {
+        if (content.hasArray()) {
+            return new String(content.array(), content.arrayOffset() + from, to - from, charset);
+        }
+        byte[] bytes = new byte[to - from];
+        content.get(from, bytes);
+        return new String(bytes, charset);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.impl.SoftDeleteHelper.ObsoleteFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory index of the deleted and overridden versions of each directory,
+ * ordered by the time they became obsolete, both overall and per original key.
+ * Lets {@link FilesystemDmsImpl#purge(String, String, LocalDateTime)} find the matching files by a range scan
+ * instead of listing and parsing the whole directory.
+ * A directory is loaded lazily on first access, afterwards it is kept current
+ * by the write operations of {@link FilesystemDmsImpl}.
+ */
+class ObsoleteIndex {
+
+    interface ObsoleteFileLoader {
+        Collection<ObsoleteFile> load(Path directoryPath) throws IOException;
+    }
+
+    private static class DirectoryEntries {
+        private final NavigableSet<ObsoleteFile> all = new ConcurrentSkipListSet<>();
+        private final Map<String, NavigableSet<ObsoleteFile>> byOrigKey = new ConcurrentHashMap<>();
+
+        void add(ObsoleteFile obsoleteFile) {
+            all.add(obsoleteFile);
+            byOrigKey.computeIfAbsent(obsoleteFile.origKey(), k -> new ConcurrentSkipListSet<>()).add(obsoleteFile);
+        }
+
+        void remove(ObsoleteFile obsoleteFile) {
+            all.remove(obsoleteFile);
+            byOrigKey.computeIfPresent(obsoleteFile.origKey(), (k, files) -> {
+                files.remove(obsoleteFile);
+                return files.isEmpty() ? null : files;
+            });
+        }
+    }
+
+    private final Map<Path, DirectoryEntries> directoryToEntries = new ConcurrentHashMap<>();
+
+    private final ObsoleteFileLoader loader;
+
+    ObsoleteIndex(ObsoleteFileLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the obsolete files of the given original key (or of all keys if {@code null}),
+     * which became obsolete before the given time (or at any time if {@code null}), oldest first.
+     */
+    List<ObsoleteFile> find(Path directoryPath, String origKey, LocalDateTime obsoleteBefore) {
+        DirectoryEntries entries = getOrLoad(directoryPath);
+        NavigableSet<ObsoleteFile> files = origKey == null ? entries.all : entries.byOrigKey.get(origKey);
+        if (files == null) {
+            return List.of();
+        }
+        if (obsoleteBefore != null) {
+            files = files.headSet(new ObsoleteFile(obsoleteBefore, "", origKey, false), false);
+        }
+        return List.copyOf(files);
+    }
+
+    void add(Path directoryPath, ObsoleteFile obsoleteFile) {
+        directoryToEntries.computeIfPresent(directoryPath, (dir, entries) -> {
+            entries.add(obsoleteFile);
+            return entries;
+        });
+    }
+
+    void remove(Path directoryPath, ObsoleteFile obsoleteFile) {
+        directoryToEntries.computeIfPresent(directoryPath, (dir, entries) -> {
+            entries.remove(obsoleteFile);
+            return entries;
+        });
+    }
+
+    void invalidate(Path directoryPath) {
+        directoryToEntries.remove(directoryPath);
+    }
+
+    void invalidateAll() {
+        directoryToEntries.clear();
+    }
+
+    private DirectoryEntries getOrLoad(Path directoryPath) {
+        return directoryToEntries.computeIfAbsent(directoryPath, dir -> {
+            try {
+                DirectoryEntries entries = new DirectoryEntries();
+                for (ObsoleteFile obsoleteFile : loader.load(dir)) {
+                    entries.add(obsoleteFile);
+                }
+                return entries;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list files at path: %s".formatted(dir), e);
+            }
+        });
+    }
+}
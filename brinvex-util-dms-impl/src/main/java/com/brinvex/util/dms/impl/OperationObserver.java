@@ -0,0 +1,85 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.DmsObserver;
+import com.brinvex.util.dms.api.DmsOperationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Times the Dms operations and reports them to the configured {@link DmsObserver}.
+ * Without an observer, the operations are run directly and the bytes are not counted.
+ */
+class OperationObserver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OperationObserver.class);
+
+    /**
+     * Sums the bytes read or written by an operation, possibly from several threads.
+     */
+    static final class ByteCounter {
+
+        static final ByteCounter DISABLED = new ByteCounter(null);
+
+        private final LongAdder bytes;
+
+        private ByteCounter(LongAdder bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean isEnabled() {
+            return bytes != null;
+        }
+
+        void add(long count) {
+            if (bytes != null) {
+                bytes.add(count);
+            }
+        }
+    }
+
+    private final DmsObserver observer;
+
+    private final String workspace;
+
+    OperationObserver(DmsObserver observer, String workspace) {
+        this.observer = observer;
+        this.workspace = workspace;
+    }
+
+    <RESULT> RESULT call(String operation, String directory, Function<ByteCounter, RESULT> action) {
+        if (observer == null) {
+            return action.apply(ByteCounter.DISABLED);
+        }
+        ByteCounter bytes = new ByteCounter(new LongAdder());
+        long start = System.nanoTime();
+        RESULT result;
+        try {
+            result = action.apply(bytes);
+        } catch (RuntimeException | Error e) {
+            notify(operation, directory, bytes, start, e);
+            throw e;
+        }
+        notify(operation, directory, bytes, start, null);
+        return result;
+    }
+
+    void run(String operation, String directory, Consumer<ByteCounter> action) {
+        call(operation, directory, bytes -> {
+            action.accept(bytes);
+            return null;
+        });
+    }
+
+    private void notify(String operation, String directory, ByteCounter bytes, long start, Throwable failure) {
+        long latencyNanos = System.nanoTime() - start;
+        try {
+            observer.onOperation(new DmsOperationEvent(operation, workspace, directory, bytes.bytes.sum(), latencyNanos, failure));
+        } catch (RuntimeException e) {
+            LOG.warn("Observer failed: operation={}, workspace={}, directory={}", operation, workspace, directory, e);
+        }
+    }
+}
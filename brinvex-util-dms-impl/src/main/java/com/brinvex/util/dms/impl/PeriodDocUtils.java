@@ -1,63 +1,244 @@
 package com.brinvex.util.dms.impl;
 
+import com.brinvex.util.dms.api.PeriodCoverage;
+import com.brinvex.util.dms.api.PeriodCoverage.Gap;
+
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.SequencedMap;
 import java.util.SequencedSet;
 import java.util.function.Function;
 
 import static java.util.Collections.emptySortedSet;
-import static java.util.Comparator.comparing;
 
 class PeriodDocUtils {
 
+    private static final int PACKED_BITS = 21;
+
+    private static final long PACKED_MASK = (1L << PACKED_BITS) - 1;
+
+    /**
+     * Maps the raw keys to the keys, skipping the raw keys mapped to {@code null}, keeping the order of the raw keys.
+     */
+    static <KEY> SequencedMap<KEY, String> parseKeys(Collection<String> rawKeys, Function<String, KEY> keyFnc) {
+        SequencedMap<KEY, String> keys = new LinkedHashMap<>();
+        for (String rawKey : rawKeys) {
+            KEY key = keyFnc.apply(rawKey);
+            if (key != null) {
+                if (keys.put(key, rawKey) != null) {
+                    throw new IllegalStateException("Duplicate key: %s, %s".formatted(rawKey, key));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Finds the keys whose periods are covered by the other ones, in the order of the periods.
+     * Each key is projected once into its start and end epoch day, the sorting and the sweep run on primitives,
+     * so the functions are called 2n times instead of O(n log n) times.
+     */
     public static <KEY> SequencedSet<KEY> findRedundantKeys(Collection<KEY> keys, Function<KEY, LocalDate> keyStartDateInclFnc, Function<KEY, LocalDate> keyEndDateInclFnc) {
         int size = keys.size();
         if (size <= 1) {
             return emptySortedSet();
         }
-        List<KEY> sortedKeys = keys.stream().sorted(comparing(keyStartDateInclFnc).thenComparing(keyEndDateInclFnc)).toList();
+        List<KEY> keyList = new ArrayList<>(keys);
+        long[] startDays = new long[size];
+        long[] endDays = new long[size];
+        for (int i = 0; i < size; i++) {
+            KEY key = keyList.get(i);
+            startDays[i] = keyStartDateInclFnc.apply(key).toEpochDay();
+            endDays[i] = keyEndDateInclFnc.apply(key).toEpochDay();
+        }
+        int[] order = sortedIndices(startDays, endDays);
+        long[] sortedStartDays = new long[size];
+        long[] sortedEndDays = new long[size];
+        for (int i = 0; i < size; i++) {
+            sortedStartDays[i] = startDays[order[i]];
+            sortedEndDays[i] = endDays[order[i]];
+        }
+        boolean[] redundant = findRedundant(sortedStartDays, sortedEndDays);
         SequencedSet<KEY> uselessKeys = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (redundant[i]) {
+                uselessKeys.add(keyList.get(order[i]));
+            }
+        }
+        return uselessKeys;
+    }
+
+    /**
+     * The sweep of {@link #findRedundantKeys} over the periods sorted by the start and the end day,
+     * a period is redundant if it lies within the previous useful one, the next one, or both of them if they are continuous.
+     * Returns the flags of the redundant periods.
+     */
+    static boolean[] findRedundant(long[] startDays, long[] endDays) {
+        int size = startDays.length;
+        boolean[] redundant = new boolean[size];
+        if (size <= 1) {
+            return redundant;
+        }
         int prevUsefulIndex = 0;
         for (int i = 0; i < size; i++) {
-            KEY midKey = sortedKeys.get(i);
             boolean useful;
             if (i == 0) {
-                KEY nextKey = sortedKeys.get(i + 1);
-                LocalDate midStartDateIncl = keyStartDateInclFnc.apply(midKey);
-                LocalDate nextStartDateIncl = keyStartDateInclFnc.apply(nextKey);
-                useful = midStartDateIncl.isBefore(nextStartDateIncl);
+                useful = startDays[i] < startDays[i + 1];
             } else if (i == size - 1) {
-                KEY prevKey = sortedKeys.get(prevUsefulIndex);
-                LocalDate midEndDateIncl = keyEndDateInclFnc.apply(midKey);
-                LocalDate prevEndDateIncl = keyEndDateInclFnc.apply(prevKey);
-                useful = midEndDateIncl.isAfter(prevEndDateIncl);
+                useful = endDays[i] > endDays[prevUsefulIndex];
             } else {
-                KEY prevKey = sortedKeys.get(prevUsefulIndex);
-                KEY nextKey = sortedKeys.get(i + 1);
-                LocalDate prevEndDateExcl = keyEndDateInclFnc.apply(prevKey).plusDays(1);
-                LocalDate nextStartDateIncl = keyStartDateInclFnc.apply(nextKey);
-                boolean neighborsContinuous = !prevEndDateExcl.isBefore(nextStartDateIncl);
+                int prev = prevUsefulIndex;
+                int next = i + 1;
+                boolean neighborsContinuous = endDays[prev] + 1 >= startDays[next];
                 if (neighborsContinuous) {
-                    boolean inside = !keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(prevKey))
-                                     && !keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(nextKey));
-                    useful = !inside;
+                    useful = startDays[i] < startDays[prev] || endDays[i] > endDays[next];
                 } else {
-                    boolean insidePrev = !keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(prevKey))
-                                         && !keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(prevKey));
-                    boolean insideNext = !keyStartDateInclFnc.apply(midKey).isBefore(keyStartDateInclFnc.apply(nextKey))
-                                         && !keyEndDateInclFnc.apply(midKey).isAfter(keyEndDateInclFnc.apply(nextKey));
+                    boolean insidePrev = startDays[i] >= startDays[prev] && endDays[i] <= endDays[prev];
+                    boolean insideNext = startDays[i] >= startDays[next] && endDays[i] <= endDays[next];
                     useful = !insidePrev && !insideNext;
                 }
             }
             if (!useful) {
-                uselessKeys.add(midKey);
+                redundant[i] = true;
             } else {
                 prevUsefulIndex = i;
             }
         }
-        return uselessKeys;
+        return redundant;
     }
 
+    /**
+     * The fewest keys covering the range and the uncovered gaps, see {@link #findCovering}.
+     */
+    static <KEY> PeriodCoverage<KEY> findCoveringKeys(
+            SequencedMap<KEY, String> keyToRawKey,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    ) {
+        validateRange(startDateIncl, endDateIncl);
+        int size = keyToRawKey.size();
+        List<KEY> keys = new ArrayList<>(keyToRawKey.keySet());
+        long[] startDays = new long[size];
+        long[] endDays = new long[size];
+        for (int i = 0; i < size; i++) {
+            KEY key = keys.get(i);
+            startDays[i] = keyStartDateInclFnc.apply(key).toEpochDay();
+            endDays[i] = keyEndDateInclFnc.apply(key).toEpochDay();
+        }
+        int[] order = sortedIndices(startDays, endDays);
+        Covering covering = findCovering(startDays, endDays, order, startDateIncl.toEpochDay(), endDateIncl.toEpochDay());
+        SequencedMap<KEY, String> coveringKeys = new LinkedHashMap<>();
+        for (int i : covering.indices()) {
+            KEY key = keys.get(i);
+            coveringKeys.put(key, keyToRawKey.get(key));
+        }
+        return new PeriodCoverage<>(coveringKeys, covering.gaps());
+    }
+
+    static void validateRange(LocalDate startDateIncl, LocalDate endDateIncl) {
+        if (startDateIncl == null || endDateIncl == null || startDateIncl.isAfter(endDateIncl)) {
+            throw new IllegalArgumentException("Invalid range: %s - %s".formatted(startDateIncl, endDateIncl));
+        }
+    }
+
+    /**
+     * The selected periods, as indices into the arrays of the periods, and the uncovered gaps.
+     */
+    record Covering(int[] indices, List<Gap> gaps) {
+    }
+
+    /**
+     * Greedy minimum cover of the days from-to by the periods, visited in the order of their start day:
+     * from the first uncovered day, selects the period starting at or before it and reaching the furthest,
+     * or records a gap up to the start of the next period if there is none.
+     * Each period is visited once, so it is linear after the sorting.
+     *
+     * @param order the indices of the periods sorted by the start day, or {@code null} if the arrays are already sorted
+     */
+    static Covering findCovering(long[] startDays, long[] endDays, int[] order, long fromDay, long toDay) {
+        int size = startDays.length;
+        int[] selected = new int[Math.min(size, 16)];
+        int selectedCount = 0;
+        List<Gap> gaps = new ArrayList<>();
+        long uncoveredDay = fromDay;
+        int next = 0;
+        while (uncoveredDay <= toDay) {
+            int best = -1;
+            long bestEndDay = uncoveredDay - 1;
+            for (; next < size; next++) {
+                int i = order == null ? next : order[next];
+                if (startDays[i] > uncoveredDay) {
+                    break;
+                }
+                if (endDays[i] > bestEndDay) {
+                    best = i;
+                    bestEndDay = endDays[i];
+                }
+            }
+            if (best >= 0) {
+                if (selectedCount == selected.length) {
+                    selected = Arrays.copyOf(selected, selectedCount * 2);
+                }
+                selected[selectedCount++] = best;
+                uncoveredDay = bestEndDay + 1;
+            } else {
+                long gapEndDay = toDay;
+                if (next < size) {
+                    gapEndDay = Math.min(toDay, startDays[order == null ? next : order[next]] - 1);
+                }
+                gaps.add(new Gap(LocalDate.ofEpochDay(uncoveredDay), LocalDate.ofEpochDay(gapEndDay)));
+                uncoveredDay = gapEndDay + 1;
+            }
+        }
+        return new Covering(Arrays.copyOf(selected, selectedCount), gaps);
+    }
+
+    /**
+     * Returns the indices of the periods sorted by the start day, then by the end day, then by the index.
+     * The three are packed into one {@code long} per period and sorted as primitives,
+     * if the days fit in 21 bits relative to the earliest ones (about 5700 years) and there are at most 2^21 periods,
+     * otherwise the indices are sorted by a comparator.
+     */
+    static int[] sortedIndices(long[] startDays, long[] endDays) {
+        int size = startDays.length;
+        long minStartDay = Long.MAX_VALUE;
+        long maxStartDay = Long.MIN_VALUE;
+        long minEndDay = Long.MAX_VALUE;
+        long maxEndDay = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minStartDay = Math.min(minStartDay, startDays[i]);
+            maxStartDay = Math.max(maxStartDay, startDays[i]);
+            minEndDay = Math.min(minEndDay, endDays[i]);
+            maxEndDay = Math.max(maxEndDay, endDays[i]);
+        }
+        int[] order = new int[size];
+        if (size <= PACKED_MASK + 1 && maxStartDay - minStartDay <= PACKED_MASK && maxEndDay - minEndDay <= PACKED_MASK) {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = (startDays[i] - minStartDay) << (2 * PACKED_BITS) | (endDays[i] - minEndDay) << PACKED_BITS | i;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) (packed[i] & PACKED_MASK);
+            }
+        } else {
+            Integer[] boxedOrder = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxedOrder[i] = i;
+            }
+            Arrays.sort(boxedOrder, Comparator.<Integer>comparingLong(i -> startDays[i]).thenComparingLong(i -> endDays[i]));
+            for (int i = 0; i < size; i++) {
+                order[i] = boxedOrder[i];
+            }
+        }
+        return order;
+    }
 }
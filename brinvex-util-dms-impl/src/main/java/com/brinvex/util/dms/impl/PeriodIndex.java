@@ -0,0 +1,245 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.PeriodCoverage;
+import com.brinvex.util.dms.impl.PeriodDocUtils.Covering;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SequencedMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of the periods of the keys of each directory, serving
+ * {@link FilesystemDmsImpl#getRedundantPeriodKeys(String, Function, Function, Function)}
+ * and {@link FilesystemDmsImpl#getCoveringPeriodKeys}.
+ * <p>
+ * A directory is loaded on the first query, parsing each key once by the functions of the query,
+ * afterwards it is kept current by the write operations of {@link FilesystemDmsImpl}, each of them
+ * parsing only its key and updating the sorted periods in O(log n).
+ * A query is then a single sweep over the sorted periods, copied into primitive arrays once per change of the directory.
+ * Each directory keeps one index per classes of the functions, so the functions of the same class,
+ * e.g. the instances of the same lambda expression, must parse and date the keys the same way.
+ */
+class PeriodIndex {
+
+    /**
+     * Ordered by the period, then by the raw key, like the sorting of the listed keys by the period.
+     */
+    private record Period<KEY>(long startDay, long endDay, String rawKey, KEY key) implements Comparable<Period<KEY>> {
+        @Override
+        public int compareTo(Period<KEY> other) {
+            int result = Long.compare(startDay, other.startDay);
+            if (result == 0) {
+                result = Long.compare(endDay, other.endDay);
+            }
+            return result != 0 ? result : rawKey.compareTo(other.rawKey);
+        }
+    }
+
+    private static final class DirectoryPeriods<KEY> {
+        private final Function<String, KEY> keyFnc;
+        private final Function<KEY, LocalDate> keyStartDateInclFnc;
+        private final Function<KEY, LocalDate> keyEndDateInclFnc;
+        private final NavigableSet<Period<KEY>> sortedPeriods = new TreeSet<>();
+        private final Map<String, Period<KEY>> rawKeyToPeriod = new HashMap<>();
+        private final Map<KEY, String> keyToRawKey = new HashMap<>();
+        private List<Period<KEY>> sortedSnapshot;
+        private long[] startDays;
+        private long[] endDays;
+        private SequencedMap<KEY, String> redundantKeys;
+
+        private DirectoryPeriods(Function<String, KEY> keyFnc, Function<KEY, LocalDate> keyStartDateInclFnc, Function<KEY, LocalDate> keyEndDateInclFnc) {
+            this.keyFnc = keyFnc;
+            this.keyStartDateInclFnc = keyStartDateInclFnc;
+            this.keyEndDateInclFnc = keyEndDateInclFnc;
+        }
+
+        /**
+         * Returns false if the key is a duplicate, the index must be then reloaded to report it.
+         */
+        private synchronized boolean add(String rawKey) {
+            KEY key = keyFnc.apply(rawKey);
+            if (key == null || rawKeyToPeriod.containsKey(rawKey)) {
+                return true;
+            }
+            String otherRawKey = keyToRawKey.putIfAbsent(key, rawKey);
+            if (otherRawKey != null) {
+                return false;
+            }
+            long startDay = keyStartDateInclFnc.apply(key).toEpochDay();
+            long endDay = keyEndDateInclFnc.apply(key).toEpochDay();
+            Period<KEY> period = new Period<>(startDay, endDay, rawKey, key);
+            rawKeyToPeriod.put(rawKey, period);
+            sortedPeriods.add(period);
+            changed();
+            return true;
+        }
+
+        private synchronized void remove(String rawKey) {
+            Period<KEY> period = rawKeyToPeriod.remove(rawKey);
+            if (period != null) {
+                sortedPeriods.remove(period);
+                keyToRawKey.remove(period.key());
+                changed();
+            }
+        }
+
+        private void changed() {
+            sortedSnapshot = null;
+            redundantKeys = null;
+        }
+
+        /**
+         * Copies the sorted periods into arrays, once per change of the directory.
+         */
+        private void takeSnapshot() {
+            if (sortedSnapshot == null) {
+                sortedSnapshot = List.copyOf(sortedPeriods);
+                startDays = new long[sortedSnapshot.size()];
+                endDays = new long[sortedSnapshot.size()];
+                for (int i = 0; i < sortedSnapshot.size(); i++) {
+                    startDays[i] = sortedSnapshot.get(i).startDay();
+                    endDays[i] = sortedSnapshot.get(i).endDay();
+                }
+            }
+        }
+
+        private synchronized SequencedMap<KEY, String> getRedundantKeys() {
+            if (redundantKeys == null) {
+                takeSnapshot();
+                boolean[] redundant = PeriodDocUtils.findRedundant(startDays, endDays);
+                List<Period<KEY>> redundantPeriods = new ArrayList<>();
+                for (int i = 0; i < redundant.length; i++) {
+                    if (redundant[i]) {
+                        redundantPeriods.add(sortedSnapshot.get(i));
+                    }
+                }
+                redundantPeriods.sort(Comparator.comparing(Period::rawKey));
+                redundantKeys = new LinkedHashMap<>();
+                for (Period<KEY> period : redundantPeriods) {
+                    redundantKeys.put(period.key(), period.rawKey());
+                }
+            }
+            return redundantKeys;
+        }
+
+        private synchronized PeriodCoverage<KEY> getCoveringKeys(LocalDate startDateIncl, LocalDate endDateIncl) {
+            takeSnapshot();
+            Covering covering = PeriodDocUtils.findCovering(startDays, endDays, null, startDateIncl.toEpochDay(), endDateIncl.toEpochDay());
+            SequencedMap<KEY, String> coveringKeys = new LinkedHashMap<>();
+            for (int i : covering.indices()) {
+                coveringKeys.put(sortedSnapshot.get(i).key(), sortedSnapshot.get(i).rawKey());
+            }
+            return new PeriodCoverage<>(coveringKeys, covering.gaps());
+        }
+    }
+
+    /**
+     * The indexes of each directory by the classes of their functions,
+     * the inner maps are accessed only within the atomic operations of the outer map.
+     */
+    private final Map<Path, Map<List<Class<?>>, DirectoryPeriods<?>>> directoryToPeriods = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the redundant keys like {@link PeriodDocUtils#findRedundantKeys}, mapped to the raw keys,
+     * loading the directory from the raw keys if it is not indexed yet by the functions of the given classes.
+     */
+    <KEY> SequencedMap<KEY, String> getRedundantKeys(
+            Path directoryPath,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            Supplier<Collection<String>> rawKeyLoader
+    ) {
+        return new LinkedHashMap<>(getOrLoad(directoryPath, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc, rawKeyLoader).getRedundantKeys());
+    }
+
+    /**
+     * Returns the covering keys like {@link PeriodDocUtils#findCoveringKeys}, without sorting the periods.
+     */
+    <KEY> PeriodCoverage<KEY> getCoveringKeys(
+            Path directoryPath,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl,
+            Supplier<Collection<String>> rawKeyLoader
+    ) {
+        PeriodDocUtils.validateRange(startDateIncl, endDateIncl);
+        return getOrLoad(directoryPath, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc, rawKeyLoader).getCoveringKeys(startDateIncl, endDateIncl);
+    }
+
+    /**
+     * Loads the directory atomically with the concurrent writes, like {@link KeyIndex},
+     * so a key written during the loading is either listed or added afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    private <KEY> DirectoryPeriods<KEY> getOrLoad(
+            Path directoryPath,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            Supplier<Collection<String>> rawKeyLoader
+    ) {
+        List<Class<?>> fncClasses = List.of(keyFnc.getClass(), keyStartDateInclFnc.getClass(), keyEndDateInclFnc.getClass());
+        List<DirectoryPeriods<?>> result = new ArrayList<>(1);
+        directoryToPeriods.compute(directoryPath, (dir, loadedPeriodsByFncClasses) -> {
+            Map<List<Class<?>>, DirectoryPeriods<?>> periodsByFncClasses = loadedPeriodsByFncClasses != null ? loadedPeriodsByFncClasses : new HashMap<>();
+            result.add(periodsByFncClasses.computeIfAbsent(fncClasses, k -> {
+                DirectoryPeriods<KEY> loadedPeriods = new DirectoryPeriods<>(keyFnc, keyStartDateInclFnc, keyEndDateInclFnc);
+                for (String rawKey : rawKeyLoader.get()) {
+                    if (!loadedPeriods.add(rawKey)) {
+                        throw new IllegalStateException("Duplicate key: %s, %s".formatted(rawKey, keyFnc.apply(rawKey)));
+                    }
+                }
+                return loadedPeriods;
+            }));
+            return periodsByFncClasses;
+        });
+        return (DirectoryPeriods<KEY>) result.getFirst();
+    }
+
+    /**
+     * Drops the index of the directory if the key can't be indexed, e.g. a duplicate or a parsing failure,
+     * so the write succeeds and the next query reports the problem.
+     */
+    void add(Path directoryPath, String rawKey) {
+        directoryToPeriods.computeIfPresent(directoryPath, (dir, periodsByFncClasses) -> {
+            periodsByFncClasses.values().removeIf(periods -> {
+                try {
+                    return !periods.add(rawKey);
+                } catch (RuntimeException e) {
+                    return true;
+                }
+            });
+            return periodsByFncClasses.isEmpty() ? null : periodsByFncClasses;
+        });
+    }
+
+    void remove(Path directoryPath, String rawKey) {
+        directoryToPeriods.computeIfPresent(directoryPath, (dir, periodsByFncClasses) -> {
+            periodsByFncClasses.values().forEach(periods -> periods.remove(rawKey));
+            return periodsByFncClasses;
+        });
+    }
+
+    void invalidate(Path directoryPath) {
+        directoryToPeriods.remove(directoryPath);
+    }
+
+    void invalidateAll() {
+        directoryToPeriods.clear();
+    }
+}
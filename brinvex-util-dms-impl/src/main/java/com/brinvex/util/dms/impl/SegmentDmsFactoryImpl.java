@@ -0,0 +1,22 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DmsConfig;
+
+import java.nio.file.Path;
+
+public class SegmentDmsFactoryImpl extends AbstractDmsFactory {
+
+    public SegmentDmsFactoryImpl(Path basePath) {
+        this(basePath, DmsConfig.defaults());
+    }
+
+    public SegmentDmsFactoryImpl(Path basePath, DmsConfig config) {
+        super(basePath, config);
+    }
+
+    @Override
+    Dms newDms(Path basePath, String workspace, DmsConfig config) {
+        return new SegmentDmsImpl(basePath, workspace, config);
+    }
+}
@@ -0,0 +1,878 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.ContentCacheStats;
+import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DmsConfig;
+import com.brinvex.util.dms.api.DocumentVersion;
+import com.brinvex.util.dms.api.KeyQuery;
+import com.brinvex.util.dms.api.PeriodCoverage;
+import com.brinvex.util.dms.api.PutResult;
+import com.brinvex.util.dms.impl.OperationObserver.ByteCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SequencedCollection;
+import java.util.SequencedMap;
+import java.util.SequencedSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static com.brinvex.util.dms.impl.DmsHelper.VIRTUAL_THREAD_EXECUTOR;
+import static com.brinvex.util.dms.impl.DmsHelper.forEachKeyInParallel;
+import static com.brinvex.util.dms.impl.DmsHelper.validateDirectorySyntax;
+import static com.brinvex.util.dms.impl.DmsHelper.validateKeySyntax;
+import static com.brinvex.util.dms.impl.DmsHelper.validateWorkspaceSyntax;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Dms} keeping all the documents of a directory in a few append-only segment files
+ * instead of one file per document, see {@link SegmentStore}.
+ * Suited for directories with many small documents, where the per-file overhead of the filesystem dominates.
+ * <p>
+ * The keys and the versions are always indexed in memory, so the index settings of {@link DmsConfig} have no effect,
+ * neither have deduplication, compression and the content cache, which are features of the file-per-document layout.
+ */
+public class SegmentDmsImpl implements Dms {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentDmsImpl.class);
+
+    private static final long SEGMENT_SIZE_THRESHOLD = 64L * 1024 * 1024;
+
+    private final String workspace;
+
+    private final Path workspacePath;
+
+    private volatile boolean workspaceDeleted;
+
+    private final Executor executor;
+
+    private final int batchConcurrency;
+
+    private final Map<Path, SegmentStore> stores = new ConcurrentHashMap<>();
+
+    private final OperationObserver operationObserver;
+
+    /**
+     * Held shared by the document operations and exclusively by the operations closing the segment stores,
+     * so a store is never closed while another thread is using it.
+     */
+    private final ReadWriteLock workspaceLock = new ReentrantReadWriteLock();
+
+    public SegmentDmsImpl(Path basePath, String workspace) {
+        this(basePath, workspace, DmsConfig.defaults());
+    }
+
+    public SegmentDmsImpl(Path basePath, String workspace, DmsConfig config) {
+        validateWorkspaceSyntax(workspace);
+        this.workspace = workspace;
+        this.workspacePath = basePath.resolve(workspace);
+        if (!Files.exists(workspacePath)) {
+            try {
+                Files.createDirectories(workspacePath);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create workspace: %s".formatted(workspacePath), e);
+            }
+        } else if (!Files.isDirectory(workspacePath)) {
+            throw new IllegalArgumentException("Workspace is not a directory: %s".formatted(workspace));
+        }
+        this.workspaceDeleted = false;
+        this.executor = config.executor() != null ? config.executor() : VIRTUAL_THREAD_EXECUTOR;
+        this.batchConcurrency = config.batchConcurrency();
+        this.operationObserver = new OperationObserver(config.observer(), workspace);
+    }
+
+    private SegmentStore getStore(String directory) {
+        Path directoryPath = workspacePath.resolve(directory);
+        return stores.computeIfAbsent(directoryPath, path -> {
+            try {
+                return SegmentStore.open(path, SEGMENT_SIZE_THRESHOLD);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open segments at path: %s".formatted(path), e);
+            }
+        });
+    }
+
+    @Override
+    public SequencedCollection<String> getKeys(String directory) {
+        return call("getKeys", directory, bytes -> findKeys(directory));
+    }
+
+    private SequencedCollection<String> findKeys(String directory) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        return getStore(directory).getKeys();
+    }
+
+    @Override
+    public SequencedCollection<String> getKeys(String directory, KeyQuery query) {
+        requireNonNull(query);
+        return call("getKeys", directory, bytes -> {
+            validateWorkspaceNotDeleted();
+            validateDirectorySyntax(directory);
+            return getStore(directory).getKeys(query);
+        });
+    }
+
+    @Override
+    public void add(String directory, String key, String textContent, Charset charset) {
+        run("add", directory, bytes -> add(directory, key, textWriter(textContent, charset), bytes));
+    }
+
+    @Override
+    public void add(String directory, String key, byte[] binaryContent) {
+        run("add", directory, bytes -> add(directory, key, out -> out.write(binaryContent), bytes));
+    }
+
+    @Override
+    public void add(String directory, String key, InputStream inputStream) {
+        run("add", directory, bytes -> add(directory, key, inputStream::transferTo, bytes));
+    }
+
+    @Override
+    public void add(String directory, String key, ReadableByteChannel channel) {
+        run("add", directory, bytes -> add(directory, key, channelWriter(channel), bytes));
+    }
+
+    private void add(String directory, String key, SegmentStore.ContentWriter contentWriter, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        SegmentStore store = getStore(directory);
+        if (store.getLocation(key) != null) {
+            throw new IllegalArgumentException("Document already exists: workspace='%s', directory='%s', key='%s'"
+                    .formatted(workspace, directory, key));
+        }
+        try {
+            store.put(key, contentWriter, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the document: directory=%s, key=%s".formatted(directory, key), e);
+        }
+        countStoredBytes(bytes, store, key);
+    }
+
+    @Override
+    public boolean put(String directory, String key, String textContent, Charset charset) {
+        return call("put", directory, bytes -> put(directory, key, textWriter(textContent, charset), bytes));
+    }
+
+    @Override
+    public boolean put(String directory, String key, byte[] binaryContent) {
+        return call("put", directory, bytes -> put(directory, key, out -> out.write(binaryContent), bytes));
+    }
+
+    @Override
+    public boolean put(String directory, String key, Map<String, String> propertiesContent, Charset charset) {
+        return call("put", directory, bytes -> put(directory, key, out -> KeyValueFileUtils.writeMap(propertiesContent, out, charset), bytes));
+    }
+
+    @Override
+    public boolean put(String directory, String key, InputStream inputStream) {
+        return call("put", directory, bytes -> put(directory, key, inputStream::transferTo, bytes));
+    }
+
+    @Override
+    public boolean put(String directory, String key, ReadableByteChannel channel) {
+        return call("put", directory, bytes -> put(directory, key, channelWriter(channel), bytes));
+    }
+
+    private boolean put(String directory, String key, SegmentStore.ContentWriter contentWriter, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        return putDocument(directory, getStore(directory), key, contentWriter, bytes);
+    }
+
+    private static boolean putDocument(String directory, SegmentStore store, String key, SegmentStore.ContentWriter contentWriter, ByteCounter bytes) {
+        boolean isNew;
+        try {
+            isNew = store.put(key, contentWriter, false) == null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the document: directory=%s, key=%s".formatted(directory, key), e);
+        }
+        countStoredBytes(bytes, store, key);
+        return isNew;
+    }
+
+    private static void countStoredBytes(ByteCounter bytes, SegmentStore store, String key) {
+        if (bytes.isEnabled()) {
+            SegmentStore.Location location = store.getLocation(key);
+            if (location != null) {
+                bytes.add(location.contentLength());
+            }
+        }
+    }
+
+    private static SegmentStore.ContentWriter textWriter(String textContent, Charset charset) {
+        return out -> {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(textContent));
+            out.write(encoded.array(), encoded.arrayOffset(), encoded.limit());
+        };
+    }
+
+    private static SegmentStore.ContentWriter channelWriter(ReadableByteChannel channel) {
+        return out -> {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        };
+    }
+
+    @Override
+    public PutResult putIfChanged(String directory, String key, String textContent, Charset charset) {
+        byte[] binaryContent;
+        try {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(textContent));
+            binaryContent = Arrays.copyOfRange(encoded.array(), encoded.arrayOffset(), encoded.limit());
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Failed to encode the content: key=%s, charset=%s".formatted(key, charset), e);
+        }
+        return call("putIfChanged", directory, bytes -> putIfChanged(directory, key, binaryContent, bytes));
+    }
+
+    @Override
+    public PutResult putIfChanged(String directory, String key, Map<String, String> propertiesContent, Charset charset) {
+        byte[] binaryContent = KeyValueFileUtils.writeMapToBytes(propertiesContent, charset);
+        return call("putIfChanged", directory, bytes -> putIfChanged(directory, key, binaryContent, bytes));
+    }
+
+    @Override
+    public PutResult putIfChanged(String directory, String key, byte[] binaryContent) {
+        return call("putIfChanged", directory, bytes -> putIfChanged(directory, key, binaryContent, bytes));
+    }
+
+    private PutResult putIfChanged(String directory, String key, byte[] binaryContent, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        SegmentStore store = getStore(directory);
+        try {
+            boolean unchanged = store.read(key, location -> location != null
+                    && location.contentLength() == binaryContent.length
+                    && MessageDigest.isEqual(store.digest(location), ContentDigest.sha256(binaryContent)));
+            if (unchanged) {
+                return PutResult.UNCHANGED;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the document: directory=%s, key=%s".formatted(directory, key), e);
+        }
+        return putDocument(directory, store, key, out -> out.write(binaryContent), bytes) ? PutResult.ADDED : PutResult.UPDATED;
+    }
+
+    @Override
+    public boolean exists(String directory, String key) {
+        return call("exists", directory, bytes -> documentExists(directory, key));
+    }
+
+    private boolean documentExists(String directory, String key) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        return getStore(directory).getLocation(key) != null;
+    }
+
+    @Override
+    public String getTextContent(String directory, String key, Charset charset) {
+        return getContent("getTextContent", directory, key, (store, location) -> decode(store.read(location), charset));
+    }
+
+    @Override
+    public String getTextContent(String directory, String key, Charset charset, Charset alternativeCharset) {
+        return getContent("getTextContent", directory, key, (store, location) -> {
+            byte[] binaryContent = store.read(location);
+
+            List<Charset> charsets = new ArrayList<>();
+            charsets.add(requireNonNull(charset));
+            if (alternativeCharset != null) {
+                charsets.add(alternativeCharset);
+            }
+
+            List<CharacterCodingException> characterCodingExceptions = new ArrayList<>();
+            for (Charset chs : charsets) {
+                try {
+                    return decode(binaryContent, chs);
+                } catch (CharacterCodingException characterCodingException) {
+                    characterCodingExceptions.add(characterCodingException);
+                }
+            }
+
+            IOException newestException = characterCodingExceptions.removeLast();
+            for (Exception charsetException : characterCodingExceptions) {
+                newestException.addSuppressed(charsetException);
+            }
+            throw newestException;
+        });
+    }
+
+    @Override
+    public List<String> getTextLines(String directory, String key, Charset charset) {
+        return getContent("getTextLines", directory, key, (store, location) -> {
+            try (BufferedReader reader = newBufferedReader(store, location, charset)) {
+                List<String> lines = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+                return lines;
+            }
+        });
+    }
+
+    @Override
+    public List<String> getTextLines(String directory, String key, int limit, Charset charset) {
+        return getContent("getTextLines", directory, key, (store, location) -> {
+            try (Stream<String> lines = lines(store, location, charset)) {
+                return lines.limit(limit).toList();
+            }
+        });
+    }
+
+    @Override
+    public List<String> getTextLines(String directory, String key, int limit, Charset charset, Charset alternativeCharset) {
+        return getContent("getTextLines", directory, key, (store, location) -> {
+
+            List<Charset> charsets = new ArrayList<>();
+            charsets.add(requireNonNull(charset));
+            if (alternativeCharset != null) {
+                charsets.add(alternativeCharset);
+            }
+
+            List<CharacterCodingException> characterCodingExceptions = new ArrayList<>();
+            try {
+                for (Charset chs : charsets) {
+                    try (Stream<String> lines = lines(store, location, chs)) {
+                        return lines.limit(limit).toList();
+                    } catch (Throwable throwable) {
+                        if (throwable instanceof CharacterCodingException characterCodingException) {
+                            characterCodingExceptions.add(characterCodingException);
+                        } else {
+                            Throwable cause = throwable.getCause();
+                            if (cause instanceof CharacterCodingException characterCodingCause) {
+                                characterCodingExceptions.add(characterCodingCause);
+                            } else {
+                                throw throwable;
+                            }
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                for (Exception charsetException : characterCodingExceptions) {
+                    e.addSuppressed(charsetException);
+                }
+                throw e;
+            }
+
+            IOException newestException = characterCodingExceptions.removeLast();
+            for (Exception charsetException : characterCodingExceptions) {
+                newestException.addSuppressed(charsetException);
+            }
+            throw newestException;
+        });
+    }
+
+    @Override
+    public byte[] getBinaryContent(String directory, String key) {
+        return getContent("getBinaryContent", directory, key, SegmentStore::read);
+    }
+
+    @Override
+    public byte[] getBinaryContent(String directory, String key, long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=%s, length=%s".formatted(offset, length));
+        }
+        return getContent("getBinaryContent", directory, key, (store, location) -> store.read(location, offset, length));
+    }
+
+    @Override
+    public ByteBuffer mapContent(String directory, String key) {
+        return getContent("mapContent", directory, key, SegmentStore::map);
+    }
+
+    @Override
+    public InputStream openInputStream(String directory, String key) {
+        return getContent("openInputStream", directory, key, SegmentStore::openInputStream);
+    }
+
+    @Override
+    public Reader openReader(String directory, String key, Charset charset) {
+        return getContent("openReader", directory, key, (store, location) -> newBufferedReader(store, location, charset));
+    }
+
+    @Override
+    public Stream<String> streamTextLines(String directory, String key, Charset charset) {
+        return getContent("streamTextLines", directory, key, (store, location) -> lines(store, location, charset));
+    }
+
+    @Override
+    public Map<String, String> getPropertiesContent(String directory, String key, Charset charset) {
+        return getContent("getPropertiesContent", directory, key, (store, location) -> KeyValueFileUtils.readMap(ByteBuffer.wrap(store.read(location)), charset));
+    }
+
+    @Override
+    public String getProperty(String directory, String key, String propertyName, Charset charset) {
+        requireNonNull(propertyName);
+        return getContent("getProperty", directory, key, (store, location) -> KeyValueFileUtils.readValue(ByteBuffer.wrap(store.read(location)), charset, propertyName));
+    }
+
+    @Override
+    public LocalDateTime getLastModifiedTime(String directory, String key) {
+        return call("getLastModifiedTime", directory, bytes -> {
+            validateWorkspaceNotDeleted();
+            validateDirectorySyntax(directory);
+            validateKeySyntax(key);
+            return readDocument(directory, getStore(directory), key, (store, location) -> location.lastModifiedTime(), ByteCounter.DISABLED);
+        });
+    }
+
+    /**
+     * Like {@link Files#readString(Path, Charset)}, throws {@link CharacterCodingException} on malformed input.
+     */
+    private static String decode(byte[] binaryContent, Charset charset) throws CharacterCodingException {
+        return charset.newDecoder().decode(ByteBuffer.wrap(binaryContent)).toString();
+    }
+
+    private static BufferedReader newBufferedReader(SegmentStore store, SegmentStore.Location location, Charset charset) throws IOException {
+        return new BufferedReader(new InputStreamReader(store.openInputStream(location), charset.newDecoder()));
+    }
+
+    private static Stream<String> lines(SegmentStore store, SegmentStore.Location location, Charset charset) throws IOException {
+        BufferedReader reader = newBufferedReader(store, location, charset);
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private interface ContentReader<CONTENT> {
+        CONTENT read(SegmentStore store, SegmentStore.Location location) throws IOException;
+    }
+
+    private <CONTENT> CONTENT getContent(String operation, String directory, String key, ContentReader<CONTENT> contentReader) {
+        return call(operation, directory, bytes -> {
+            validateWorkspaceNotDeleted();
+            validateDirectorySyntax(directory);
+            validateKeySyntax(key);
+            return readDocument(directory, getStore(directory), key, contentReader, bytes);
+        });
+    }
+
+    private <CONTENT> CONTENT readDocument(String directory, SegmentStore store, String key, ContentReader<CONTENT> contentReader, ByteCounter bytes) {
+        try {
+            return store.read(key, location -> {
+                if (location == null) {
+                    throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'".formatted(workspace, directory, key));
+                }
+                bytes.add(location.contentLength());
+                return contentReader.read(store, location);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the document: directory=%s, key=%s".formatted(directory, key), e);
+        }
+    }
+
+    @Override
+    public List<DocumentVersion> getVersions(String directory, String key) {
+        return call("getVersions", directory, bytes -> findVersions(directory, key));
+    }
+
+    private List<DocumentVersion> findVersions(String directory, String key) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        return getStore(directory).getObsoleteVersions(key)
+                .stream()
+                .map(v -> new DocumentVersion(v.obsoleteTime(), v.deleted() ? DocumentVersion.Kind.DELETED : DocumentVersion.Kind.OVERRIDDEN))
+                .toList();
+    }
+
+    @Override
+    public byte[] getVersionContent(String directory, String key, LocalDateTime obsoleteTime) {
+        return call("getVersionContent", directory, bytes -> getVersionContent(directory, key, obsoleteTime, bytes));
+    }
+
+    private byte[] getVersionContent(String directory, String key, LocalDateTime obsoleteTime, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        validateKeySyntax(key);
+        requireNonNull(obsoleteTime);
+        SegmentStore store = getStore(directory);
+        try {
+            return store.readObsolete(key, obsoleteTime, location -> {
+                if (location == null) {
+                    throw new IllegalArgumentException("Document version doesn't exist: workspace='%s', directory='%s', key='%s', obsoleteTime=%s"
+                            .formatted(workspace, directory, key, obsoleteTime));
+                }
+                bytes.add(location.contentLength());
+                return store.read(location);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the document: directory=%s, key=%s".formatted(directory, key), e);
+        }
+    }
+
+    @Override
+    public ContentCacheStats getContentCacheStats() {
+        return null;
+    }
+
+    /**
+     * The documents are appended to the same segment, so unlike {@link FilesystemDmsImpl} they are written sequentially.
+     */
+    @Override
+    public SequencedMap<String, Boolean> putAllTextContent(String directory, Map<String, String> textContents, Charset charset) {
+        requireNonNull(charset);
+        return call("putAllTextContent", directory, bytes ->
+                putAll(directory, textContents, textContent -> textWriter(textContent, charset), bytes));
+    }
+
+    @Override
+    public SequencedMap<String, Boolean> putAllBinaryContent(String directory, Map<String, byte[]> binaryContents) {
+        return call("putAllBinaryContent", directory, bytes ->
+                putAll(directory, binaryContents, binaryContent -> out -> out.write(binaryContent), bytes));
+    }
+
+    private <CONTENT> SequencedMap<String, Boolean> putAll(
+            String directory,
+            Map<String, CONTENT> contents,
+            Function<CONTENT, SegmentStore.ContentWriter> contentWriterFnc,
+            ByteCounter bytes
+    ) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : contents.keySet()) {
+            validateKeySyntax(key);
+        }
+        if (contents.isEmpty()) {
+            return Collections.emptySortedMap();
+        }
+        SegmentStore store = getStore(directory);
+        SequencedMap<String, Boolean> results = new LinkedHashMap<>();
+        for (Map.Entry<String, CONTENT> e : contents.entrySet()) {
+            results.put(e.getKey(), putDocument(directory, store, e.getKey(), contentWriterFnc.apply(e.getValue()), bytes));
+        }
+        return results;
+    }
+
+    @Override
+    public SequencedMap<String, String> getAllTextContent(String directory, Collection<String> keys, Charset charset) {
+        requireNonNull(charset);
+        return call("getAllTextContent", directory, bytes ->
+                getAll(directory, keys, (store, location) -> decode(store.read(location), charset), bytes));
+    }
+
+    @Override
+    public SequencedMap<String, byte[]> getAllBinaryContent(String directory, Collection<String> keys) {
+        return call("getAllBinaryContent", directory, bytes -> getAll(directory, keys, SegmentStore::read, bytes));
+    }
+
+    private <CONTENT> SequencedMap<String, CONTENT> getAll(String directory, Collection<String> keys, ContentReader<CONTENT> contentReader, ByteCounter bytes) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : keys) {
+            validateKeySyntax(key);
+        }
+        SegmentStore store = getStore(directory);
+        return forEachKeyInParallel(keys, executor, batchConcurrency, key -> readDocument(directory, store, key, contentReader, bytes));
+    }
+
+    @Override
+    public SequencedMap<String, Boolean> existsAll(String directory, Collection<String> keys) {
+        return call("existsAll", directory, bytes -> documentsExist(directory, keys));
+    }
+
+    private SequencedMap<String, Boolean> documentsExist(String directory, Collection<String> keys) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : keys) {
+            validateKeySyntax(key);
+        }
+        SegmentStore store = getStore(directory);
+        SequencedMap<String, Boolean> results = new LinkedHashMap<>();
+        for (String key : keys) {
+            results.put(key, store.getLocation(key) != null);
+        }
+        return results;
+    }
+
+    @Override
+    public void delete(String directory, String key) {
+        delete(directory, Set.of(key));
+    }
+
+    @Override
+    public void delete(String directory, Collection<String> keys) {
+        run("delete", directory, bytes -> deleteDocuments(directory, keys));
+    }
+
+    private void deleteDocuments(String directory, Collection<String> keys) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        for (String key : keys) {
+            validateKeySyntax(key);
+        }
+        SegmentStore store = getStore(directory);
+        for (String key : keys) {
+            boolean deleted;
+            try {
+                deleted = store.delete(key);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete the document: directory=%s, key=%s".formatted(directory, key), e);
+            }
+            if (!deleted) {
+                throw new IllegalArgumentException("Document doesn't exist: workspace='%s', directory='%s', key='%s'"
+                        .formatted(workspace, directory, key));
+            }
+        }
+    }
+
+    @Override
+    public <KEY> SequencedMap<KEY, String> getRedundantPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc) {
+        return call("getRedundantPeriodKeys", directory, bytes ->
+                findRedundantPeriodKeys(directory, keyFnc, keyStartDateInclFnc, keyEndDateInclFnc));
+    }
+
+    private <KEY> SequencedMap<KEY, String> findRedundantPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc) {
+        SequencedCollection<String> rawKeys = findKeys(directory);
+        if (rawKeys.isEmpty()) {
+            return Collections.emptySortedMap();
+        }
+        SequencedMap<KEY, String> keys = PeriodDocUtils.parseKeys(rawKeys, keyFnc);
+        SequencedSet<KEY> redundantKeys = PeriodDocUtils.findRedundantKeys(keys.keySet(), keyStartDateInclFnc, keyEndDateInclFnc);
+        keys.keySet().retainAll(redundantKeys);
+        return keys;
+    }
+
+    @Override
+    public <KEY> PeriodCoverage<KEY> getCoveringPeriodKeys(
+            String directory,
+            Function<String, KEY> keyFnc,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc,
+            LocalDate startDateIncl,
+            LocalDate endDateIncl
+    ) {
+        return call("getCoveringPeriodKeys", directory, bytes -> {
+            SequencedMap<KEY, String> keys = PeriodDocUtils.parseKeys(findKeys(directory), keyFnc);
+            return PeriodDocUtils.findCoveringKeys(keys, keyStartDateInclFnc, keyEndDateInclFnc, startDateIncl, endDateIncl);
+        });
+    }
+
+    @Override
+    public <KEY> SequencedSet<KEY> getRedundantPeriodKeys(
+            Collection<KEY> keys,
+            Function<KEY, LocalDate> keyStartDateInclFnc,
+            Function<KEY, LocalDate> keyEndDateInclFnc
+    ) {
+        return PeriodDocUtils.findRedundantKeys(keys, keyStartDateInclFnc, keyEndDateInclFnc);
+    }
+
+    @Override
+    public int purge(String directory, String origKey, LocalDateTime obsoleteBefore) {
+        return call("purge", directory, bytes -> compact(directory, origKey, obsoleteBefore));
+    }
+
+    private int compact(String directory, String origKey, LocalDateTime obsoleteBefore) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        if (origKey != null) {
+            validateKeySyntax(origKey);
+        }
+        SegmentStore store = getStore(directory);
+        try {
+            int purged = store.purge(origKey, obsoleteBefore);
+            if (purged > 0) {
+                LOG.info("Hard deleted {} obsolete versions by compacting: {}", purged, workspacePath.resolve(directory));
+            }
+            return purged;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact segments at path: %s".formatted(workspacePath.resolve(directory)), e);
+        }
+    }
+
+    @Override
+    public void refresh(String directory) {
+        runExclusively("refresh", directory, () -> closeStore(directory));
+    }
+
+    private void closeStore(String directory) {
+        validateWorkspaceNotDeleted();
+        validateDirectorySyntax(directory);
+        SegmentStore store = stores.remove(workspacePath.resolve(directory));
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to close segments at path: %s".formatted(workspacePath.resolve(directory)), e);
+            }
+        }
+    }
+
+    @Override
+    public void resetWorkspace() {
+        runExclusively("resetWorkspace", null, this::recreateWorkspace);
+    }
+
+    private void recreateWorkspace() {
+        if (!workspaceDeleted) {
+            moveWorkspaceToDeleted();
+        }
+        try {
+            Files.createDirectory(workspacePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to init workspace %s".formatted(workspacePath), e);
+        }
+        workspaceDeleted = false;
+    }
+
+    @Override
+    public void deleteWorkspace() {
+        runExclusively("deleteWorkspace", null, this::moveWorkspaceToDeleted);
+    }
+
+    private void moveWorkspaceToDeleted() {
+        validateWorkspaceNotDeleted();
+        closeStores();
+        try {
+            SoftDeleteHelper.moveToObsolete(workspacePath, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to move %s to a deleted version".formatted(workspacePath), e);
+        }
+        workspaceDeleted = true;
+    }
+
+    private void closeStores() {
+        UncheckedIOException failure = null;
+        for (Path directoryPath : List.copyOf(stores.keySet())) {
+            SegmentStore store = stores.remove(directoryPath);
+            try {
+                store.close();
+            } catch (IOException e) {
+                UncheckedIOException closeException = new UncheckedIOException("Failed to close segments at path: %s".formatted(directoryPath), e);
+                if (failure == null) {
+                    failure = closeException;
+                } else {
+                    failure.addSuppressed(closeException);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public int purgeWorkspace(LocalDateTime softDeletedBefore) {
+        return call("purgeWorkspace", null, bytes -> purgeWorkspaceVersions(softDeletedBefore));
+    }
+
+    private int purgeWorkspaceVersions(LocalDateTime softDeletedBefore) {
+        try (Stream<Path> workspaces = Files.list(workspacePath.getParent())) {
+            List<Path> obsoleteWorkspaceVersions = workspaces
+                    .filter(ws -> SoftDeleteHelper.isObsolete(ws.getFileName().toString(), workspace, softDeletedBefore))
+                    .toList();
+            for (Path obsoleteWorkspaceVersion : obsoleteWorkspaceVersions) {
+                try (Stream<Path> wsChildStream = Files.walk(obsoleteWorkspaceVersion)) {
+                    wsChildStream
+                            .sorted(Comparator.reverseOrder())
+                            .peek(f -> LOG.info("Recursively hard-deleting: {} ", f))
+                            .forEach(path -> {
+                                try {
+                                    Files.delete(path);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return obsoleteWorkspaceVersions.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Observes an operation running under the shared workspace lock, the observed duration includes waiting for the lock.
+     */
+    private <RESULT> RESULT call(String operation, String directory, Function<ByteCounter, RESULT> action) {
+        return operationObserver.call(operation, directory, bytes -> {
+            Lock lock = workspaceLock.readLock();
+            lock.lock();
+            try {
+                return action.apply(bytes);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void run(String operation, String directory, Consumer<ByteCounter> action) {
+        call(operation, directory, bytes -> {
+            action.accept(bytes);
+            return null;
+        });
+    }
+
+    private void runExclusively(String operation, String directory, Runnable action) {
+        operationObserver.run(operation, directory, bytes -> {
+            Lock lock = workspaceLock.writeLock();
+            lock.lock();
+            try {
+                action.run();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void validateWorkspaceNotDeleted() {
+        if (workspaceDeleted) {
+            throw new IllegalStateException("Workspace already deleted - '%s'".formatted(workspace));
+        }
+    }
+
+}
@@ -0,0 +1,817 @@
+package com.brinvex.util.dms.impl;
+
+import com.brinvex.util.dms.api.KeyQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only storage of the documents of one directory, used by {@link SegmentDmsImpl}.
+ * <p>
+ * Every add, put and delete appends a record to the active segment file.
+ * Once the active segment grows over a threshold, it is sealed by a footer listing all its records,
+ * so that on startup the in-memory index can be rebuilt from the footers without scanning the segments.
+ * Only the last, unsealed segment is scanned; a torn record at its end is truncated.
+ * <p>
+ * A put of an existing key makes the previous version overridden, a delete makes it deleted,
+ * both remain readable from the segments until {@link #purge(String, LocalDateTime)} compacts them away
+ * by rewriting the remaining versions into a single sealed segment superseding all the older ones.
+ * <p>
+ * Record: magic, CRC32 of the rest of the header, type, timestamp, key length, content length, key, content.
+ * The timestamp is in epoch nanoseconds: the milliseconds of the wall clock plus a sequence
+ * keeping the timestamps of a directory unique, like the version times of {@link SoftDeleteHelper}.
+ * Footer: entry count, superseded segment number, entries, footer start, CRC32 of the footer, magic.
+ */
+class SegmentStore implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentStore.class);
+
+    interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads a version by the location methods of the store, the location is {@code null} if the version doesn't exist.
+     */
+    interface LocationReader<RESULT> {
+        RESULT read(Location location) throws IOException;
+    }
+
+    /**
+     * The position of a document version within the segments.
+     */
+    record Location(long segmentNo, long contentOffset, long contentLength, long timestamp) {
+        LocalDateTime lastModifiedTime() {
+            return toLocalDateTime(timestamp);
+        }
+    }
+
+    /**
+     * An overridden or deleted version of a document.
+     */
+    record ObsoleteVersion(String key, boolean deleted, long obsoleteTimestamp, Location location) {
+        LocalDateTime obsoleteTime() {
+            return toLocalDateTime(obsoleteTimestamp);
+        }
+    }
+
+    private record Entry(byte type, String key, long timestamp, long segmentNo, long contentOffset, long contentLength) {
+    }
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final int RECORD_MAGIC = 0x42584452;
+
+    private static final int FOOTER_MAGIC = 0x42584446;
+
+    private static final int RECORD_HEADER_LENGTH = 4 + 4 + 1 + 8 + 4 + 8;
+
+    private static final int FOOTER_TRAILER_LENGTH = 8 + 4 + 4;
+
+    private static final int MAX_KEY_LENGTH = 64 * 1024;
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte OBSOLETE_DELETED = 3;
+
+    private static final byte OBSOLETE_OVERRIDDEN = 4;
+
+    private final Path directoryPath;
+
+    private final long segmentSizeThreshold;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final NavigableMap<String, Location> liveVersions = new TreeMap<>();
+
+    private final Map<String, List<ObsoleteVersion>> keyToObsoleteVersions = new HashMap<>();
+
+    private final Map<Long, FileChannel> segmentChannels = new HashMap<>();
+
+    private final Map<Location, byte[]> digestCache = new ConcurrentHashMap<>();
+
+    private long lastSegmentNo;
+
+    private long lastTimestamp;
+
+    private FileChannel activeChannel;
+
+    private long activeSize;
+
+    private final List<Entry> activeEntries = new ArrayList<>();
+
+    private boolean closed;
+
+    private SegmentStore(Path directoryPath, long segmentSizeThreshold) {
+        this.directoryPath = directoryPath;
+        this.segmentSizeThreshold = segmentSizeThreshold;
+    }
+
+    static SegmentStore open(Path directoryPath, long segmentSizeThreshold) throws IOException {
+        SegmentStore store = new SegmentStore(directoryPath, segmentSizeThreshold);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(directoryPath)) {
+            return;
+        } else if (!Files.isDirectory(directoryPath)) {
+            throw new IllegalArgumentException("Not a directory: %s".formatted(directoryPath));
+        }
+        List<Long> segmentNos = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directoryPath)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(SEGMENT_FILE_SUFFIX + TEMP_FILE_SUFFIX)) {
+                    LOG.warn("Deleting unfinished compaction output: {}", file);
+                    Files.delete(file);
+                } else if (fileName.startsWith(SEGMENT_FILE_PREFIX) && fileName.endsWith(SEGMENT_FILE_SUFFIX)) {
+                    segmentNos.add(Long.parseLong(fileName, SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length(), 10));
+                }
+            }
+        }
+        segmentNos.sort(null);
+
+        Map<Long, List<Entry>> sealedEntries = new HashMap<>();
+        long supersededSegmentNo = 0;
+        for (Long segmentNo : segmentNos) {
+            FileChannel channel = openSegmentChannel(segmentNo, false);
+            segmentChannels.put(segmentNo, channel);
+            Footer footer = readFooter(segmentNo, channel);
+            if (footer != null) {
+                sealedEntries.put(segmentNo, footer.entries);
+                supersededSegmentNo = Math.max(supersededSegmentNo, footer.supersededSegmentNo);
+            }
+        }
+        for (Long segmentNo : segmentNos) {
+            if (segmentNo <= supersededSegmentNo) {
+                LOG.info("Deleting segment superseded by compaction: {}", segmentPath(segmentNo));
+                segmentChannels.remove(segmentNo).close();
+                Files.deleteIfExists(segmentPath(segmentNo));
+                continue;
+            }
+            lastSegmentNo = segmentNo;
+            List<Entry> entries = sealedEntries.get(segmentNo);
+            if (entries == null) {
+                entries = scanSegment(segmentNo);
+                if (segmentNo.equals(segmentNos.getLast())) {
+                    segmentChannels.remove(segmentNo).close();
+                    activeChannel = openSegmentChannel(segmentNo, true);
+                    segmentChannels.put(segmentNo, activeChannel);
+                    activeSize = activeChannel.size();
+                    activeEntries.addAll(entries);
+                }
+            }
+            for (Entry entry : entries) {
+                apply(entry);
+            }
+        }
+        lastSegmentNo = Math.max(lastSegmentNo, supersededSegmentNo);
+    }
+
+    private void apply(Entry entry) {
+        lastTimestamp = Math.max(lastTimestamp, entry.timestamp);
+        Location location = new Location(entry.segmentNo, entry.contentOffset, entry.contentLength, entry.timestamp);
+        switch (entry.type) {
+            case PUT -> {
+                Location prev = liveVersions.put(entry.key, location);
+                if (prev != null) {
+                    addObsoleteVersion(new ObsoleteVersion(entry.key, false, entry.timestamp, prev));
+                }
+            }
+            case DELETE -> {
+                Location prev = liveVersions.remove(entry.key);
+                if (prev != null) {
+                    addObsoleteVersion(new ObsoleteVersion(entry.key, true, entry.timestamp, prev));
+                }
+            }
+            case OBSOLETE_DELETED -> addObsoleteVersion(new ObsoleteVersion(entry.key, true, entry.timestamp, location));
+            case OBSOLETE_OVERRIDDEN -> addObsoleteVersion(new ObsoleteVersion(entry.key, false, entry.timestamp, location));
+            default -> throw new IllegalStateException("Unknown record type: %s, key=%s".formatted(entry.type, entry.key));
+        }
+    }
+
+    private void addObsoleteVersion(ObsoleteVersion obsoleteVersion) {
+        keyToObsoleteVersions.computeIfAbsent(obsoleteVersion.key, k -> new ArrayList<>()).add(obsoleteVersion);
+    }
+
+    /**
+     * Returns the obsolete versions of the key, oldest first.
+     */
+    List<ObsoleteVersion> getObsoleteVersions(String key) {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            List<ObsoleteVersion> obsoleteVersions = keyToObsoleteVersions.get(key);
+            return obsoleteVersions == null ? List.of() : List.copyOf(obsoleteVersions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<String> getKeys() {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            return List.copyOf(liveVersions.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<String> getKeys(KeyQuery query) {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            return KeyQueries.select(liveVersions.navigableKeySet(), query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Location getLocation(String key) {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            return liveVersions.get(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the live version of the key and reads it under the same read lock,
+     * so a concurrent {@link #purge} can't delete its segment in between, unlike a separate {@link #getLocation}.
+     */
+    <RESULT> RESULT read(String key, LocationReader<RESULT> reader) throws IOException {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            return reader.read(liveVersions.get(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Like {@link #read(String, LocationReader)}, for the last obsolete version of the key which became obsolete at the given time.
+     */
+    <RESULT> RESULT readObsolete(String key, LocalDateTime obsoleteTime, LocationReader<RESULT> reader) throws IOException {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            Location location = null;
+            for (ObsoleteVersion obsoleteVersion : keyToObsoleteVersions.getOrDefault(key, List.of())) {
+                if (obsoleteVersion.obsoleteTime().equals(obsoleteTime)) {
+                    location = obsoleteVersion.location;
+                }
+            }
+            return reader.read(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a new version of the document.
+     * Returns {@code null} if the key was new, otherwise the location of the now overridden version.
+     */
+    Location put(String key, ContentWriter contentWriter, boolean failIfExists) throws IOException {
+        lock.writeLock().lock();
+        try {
+            validateNotClosed();
+            Location prev = liveVersions.get(key);
+            if (prev != null && failIfExists) {
+                throw new IllegalArgumentException("Document already exists: directory='%s', key='%s'".formatted(directoryPath, key));
+            }
+            apply(append(PUT, key, nextTimestamp(), contentWriter));
+            return prev;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean delete(String key) throws IOException {
+        lock.writeLock().lock();
+        try {
+            validateNotClosed();
+            if (!liveVersions.containsKey(key)) {
+                return false;
+            }
+            apply(append(DELETE, key, nextTimestamp(), null));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    byte[] read(Location location) throws IOException {
+        if (location.contentLength > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Document too large: %s bytes".formatted(location.contentLength));
+        }
+        return read(location, 0, (int) location.contentLength);
+    }
+
+    byte[] read(Location location, long offset, int length) throws IOException {
+        long available = Math.max(0, location.contentLength - offset);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, available));
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            FileChannel channel = segmentChannels.get(location.segmentNo);
+            long position = location.contentOffset + offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of segment %s".formatted(segmentPath(location.segmentNo)));
+                }
+                position += read;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return buffer.array();
+    }
+
+    ByteBuffer map(Location location) throws IOException {
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            return segmentChannels.get(location.segmentNo).map(FileChannel.MapMode.READ_ONLY, location.contentOffset, location.contentLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Opens a stream of the content, holding its own file handle, so it stays readable after a compaction.
+     */
+    InputStream openInputStream(Location location) throws IOException {
+        FileChannel channel;
+        lock.readLock().lock();
+        try {
+            validateNotClosed();
+            channel = FileChannel.open(segmentPath(location.segmentNo), StandardOpenOption.READ);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new InputStream() {
+            private long position = location.contentOffset;
+            private final long end = location.contentOffset + location.contentLength;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (position >= end) {
+                    return -1;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of segment %s".formatted(segmentPath(location.segmentNo)));
+                }
+                position += read;
+                return read;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, end - position));
+                position += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, end - position);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Returns the SHA-256 digest of the content, cached per location since the versions are immutable.
+     */
+    byte[] digest(Location location) throws IOException {
+        byte[] digest = digestCache.get(location);
+        if (digest == null) {
+            try (InputStream inputStream = openInputStream(location)) {
+                digest = ContentDigest.sha256(inputStream);
+            }
+            digestCache.put(location, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Hard-deletes the obsolete versions matching the criteria by compacting all the segments into a new one.
+     * The compaction rewrites every remaining version of the directory, however few versions match,
+     * so its cost grows with the size of the directory rather than with the number of the purged versions.
+     */
+    int purge(String origKey, LocalDateTime obsoleteBefore) throws IOException {
+        lock.writeLock().lock();
+        try {
+            validateNotClosed();
+            List<ObsoleteVersion> purged = new ArrayList<>();
+            List<ObsoleteVersion> kept = new ArrayList<>();
+            for (List<ObsoleteVersion> obsoleteVersions : keyToObsoleteVersions.values()) {
+                for (ObsoleteVersion obsoleteVersion : obsoleteVersions) {
+                    boolean matches = (origKey == null || origKey.equals(obsoleteVersion.key))
+                                      && (obsoleteBefore == null || obsoleteVersion.obsoleteTime().isBefore(obsoleteBefore));
+                    (matches ? purged : kept).add(obsoleteVersion);
+                }
+            }
+            if (purged.isEmpty()) {
+                return 0;
+            }
+            compact(kept);
+            return purged.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compact(List<ObsoleteVersion> keptObsoleteVersions) throws IOException {
+        long compactedSegmentNo = lastSegmentNo + 1;
+        Path compactedPath = segmentPath(compactedSegmentNo);
+        Path tempPath = compactedPath.resolveSibling(compactedPath.getFileName() + TEMP_FILE_SUFFIX);
+        List<Entry> entries = new ArrayList<>();
+        try (FileChannel out = FileChannel.open(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (ObsoleteVersion obsoleteVersion : keptObsoleteVersions) {
+                byte type = obsoleteVersion.deleted ? OBSOLETE_DELETED : OBSOLETE_OVERRIDDEN;
+                Entry entry = copyRecord(out, position, type, obsoleteVersion.key, obsoleteVersion.obsoleteTimestamp, obsoleteVersion.location, compactedSegmentNo);
+                entries.add(entry);
+                position = entry.contentOffset + entry.contentLength;
+            }
+            for (Map.Entry<String, Location> liveVersion : liveVersions.entrySet()) {
+                Location location = liveVersion.getValue();
+                Entry entry = copyRecord(out, position, PUT, liveVersion.getKey(), location.timestamp, location, compactedSegmentNo);
+                entries.add(entry);
+                position = entry.contentOffset + entry.contentLength;
+            }
+            writeFooter(out, position, entries, lastSegmentNo);
+            out.force(true);
+        }
+        Files.move(tempPath, compactedPath, StandardCopyOption.ATOMIC_MOVE);
+
+        closeChannels();
+        for (long segmentNo = 1; segmentNo <= lastSegmentNo; segmentNo++) {
+            Path segmentPath = segmentPath(segmentNo);
+            try {
+                Files.deleteIfExists(segmentPath);
+            } catch (IOException e) {
+                LOG.warn("Failed to delete superseded segment {}, it will be deleted on next load", segmentPath, e);
+            }
+        }
+        lastSegmentNo = compactedSegmentNo;
+        segmentChannels.put(compactedSegmentNo, openSegmentChannel(compactedSegmentNo, false));
+
+        liveVersions.clear();
+        keyToObsoleteVersions.clear();
+        digestCache.clear();
+        for (Entry entry : entries) {
+            apply(entry);
+        }
+    }
+
+    private Entry copyRecord(FileChannel out, long position, byte type, String key, long timestamp, Location location, long segmentNo) throws IOException {
+        ByteBuffer header = recordHeader(type, key, timestamp, location.contentLength);
+        writeFully(out, header, position);
+        long contentOffset = position + header.capacity();
+        FileChannel in = segmentChannels.get(location.segmentNo);
+        long copied = 0;
+        while (copied < location.contentLength) {
+            long transferred = in.transferTo(location.contentOffset + copied, location.contentLength - copied, out.position(contentOffset + copied));
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of segment %s".formatted(segmentPath(location.segmentNo)));
+            }
+            copied += transferred;
+        }
+        return new Entry(type, key, timestamp, segmentNo, contentOffset, location.contentLength);
+    }
+
+    private Entry append(byte type, String key, long timestamp, ContentWriter contentWriter) throws IOException {
+        if (activeChannel == null) {
+            Files.createDirectories(directoryPath);
+            lastSegmentNo++;
+            activeChannel = openSegmentChannel(lastSegmentNo, true);
+            segmentChannels.put(lastSegmentNo, activeChannel);
+            activeSize = 0;
+            activeEntries.clear();
+        }
+        long recordOffset = activeSize;
+        ByteBuffer header = recordHeader(type, key, timestamp, -1);
+        long contentOffset = recordOffset + header.capacity();
+        long contentLength = 0;
+        try {
+            writeFully(activeChannel, header, recordOffset);
+            if (contentWriter != null) {
+                PositionalOutputStream contentOut = new PositionalOutputStream(activeChannel, contentOffset);
+                try (OutputStream out = new BufferedOutputStream(contentOut, 64 * 1024)) {
+                    contentWriter.write(out);
+                }
+                contentLength = contentOut.position - contentOffset;
+            }
+            writeFully(activeChannel, recordHeader(type, key, timestamp, contentLength), recordOffset);
+        } catch (IOException | RuntimeException e) {
+            try {
+                activeChannel.truncate(recordOffset);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        }
+        activeSize = contentOffset + contentLength;
+        Entry entry = new Entry(type, key, timestamp, lastSegmentNo, contentOffset, contentLength);
+        activeEntries.add(entry);
+        if (activeSize >= segmentSizeThreshold) {
+            writeFooter(activeChannel, activeSize, activeEntries, 0);
+            activeChannel = null;
+            activeEntries.clear();
+        }
+        return entry;
+    }
+
+    private static ByteBuffer recordHeader(byte type, String key, long timestamp, long contentLength) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Key too long: %s".formatted(key));
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH + keyBytes.length);
+        header.putInt(RECORD_MAGIC);
+        header.putInt(0);
+        header.put(type);
+        header.putLong(timestamp);
+        header.putInt(keyBytes.length);
+        header.putLong(contentLength);
+        header.put(keyBytes);
+        header.putInt(4, crc(header, 8, header.capacity()));
+        return header.flip();
+    }
+
+    private List<Entry> scanSegment(long segmentNo) throws IOException {
+        FileChannel channel = segmentChannels.get(segmentNo);
+        List<Entry> entries = new ArrayList<>();
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            Entry entry = readRecord(channel, segmentNo, position, size);
+            if (entry == null) {
+                LOG.warn("Truncating torn record at {}:{}", segmentPath(segmentNo), position);
+                try (FileChannel writeChannel = openSegmentChannel(segmentNo, true)) {
+                    writeChannel.truncate(position);
+                }
+                break;
+            }
+            entries.add(entry);
+            position = entry.contentOffset + entry.contentLength;
+        }
+        return entries;
+    }
+
+    private static Entry readRecord(FileChannel channel, long segmentNo, long position, long size) throws IOException {
+        if (size - position < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+        ByteBuffer fixed = readFully(channel, position, RECORD_HEADER_LENGTH);
+        int keyLength = fixed.getInt(17);
+        long contentLength = fixed.getLong(21);
+        if (fixed.getInt(0) != RECORD_MAGIC
+            || keyLength < 0 || keyLength > MAX_KEY_LENGTH
+            || contentLength < 0
+            || position + RECORD_HEADER_LENGTH + keyLength + contentLength > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH + keyLength);
+        header.put(fixed.rewind());
+        header.put(readFully(channel, position + RECORD_HEADER_LENGTH, keyLength));
+        if (header.getInt(4) != crc(header, 8, header.capacity())) {
+            return null;
+        }
+        String key = new String(header.array(), RECORD_HEADER_LENGTH, keyLength, UTF_8);
+        return new Entry(header.get(8), key, header.getLong(9), segmentNo, position + header.capacity(), contentLength);
+    }
+
+    private record Footer(long supersededSegmentNo, List<Entry> entries) {
+    }
+
+    private static void writeFooter(FileChannel channel, long footerStart, List<Entry> entries, long supersededSegmentNo) throws IOException {
+        int length = 4 + 8;
+        List<byte[]> keys = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            byte[] keyBytes = entry.key.getBytes(UTF_8);
+            keys.add(keyBytes);
+            length += 1 + 8 + 4 + keyBytes.length + 8 + 8;
+        }
+        ByteBuffer footer = ByteBuffer.allocate(length + FOOTER_TRAILER_LENGTH);
+        footer.putInt(entries.size());
+        footer.putLong(supersededSegmentNo);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            byte[] keyBytes = keys.get(i);
+            footer.put(entry.type);
+            footer.putLong(entry.timestamp);
+            footer.putInt(keyBytes.length);
+            footer.put(keyBytes);
+            footer.putLong(entry.contentOffset);
+            footer.putLong(entry.contentLength);
+        }
+        footer.putLong(footerStart);
+        footer.putInt(crc(footer, 0, footer.position()));
+        footer.putInt(FOOTER_MAGIC);
+        writeFully(channel, footer.flip(), footerStart);
+    }
+
+    private static Footer readFooter(long segmentNo, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < FOOTER_TRAILER_LENGTH + 12) {
+            return null;
+        }
+        ByteBuffer trailer = readFully(channel, size - FOOTER_TRAILER_LENGTH, FOOTER_TRAILER_LENGTH);
+        long footerStart = trailer.getLong(0);
+        if (trailer.getInt(12) != FOOTER_MAGIC || footerStart < 0 || footerStart > size - FOOTER_TRAILER_LENGTH - 12) {
+            return null;
+        }
+        long footerLength = size - footerStart;
+        if (footerLength > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer footer = readFully(channel, footerStart, (int) footerLength);
+        if (crc(footer, 0, (int) footerLength - 8) != trailer.getInt(8)) {
+            return null;
+        }
+        int entryCount = footer.getInt();
+        long supersededSegmentNo = footer.getLong();
+        List<Entry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            byte type = footer.get();
+            long timestamp = footer.getLong();
+            byte[] keyBytes = new byte[footer.getInt()];
+            footer.get(keyBytes);
+            long contentOffset = footer.getLong();
+            long contentLength = footer.getLong();
+            entries.add(new Entry(type, new String(keyBytes, UTF_8), timestamp, segmentNo, contentOffset, contentLength));
+        }
+        return new Footer(supersededSegmentNo, entries);
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int to) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.array(), buffer.arrayOffset() + from, to - from);
+        return (int) crc32.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at %s".formatted(position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+
+    private long nextTimestamp() {
+        lastTimestamp = Math.max(System.currentTimeMillis() * NANOS_PER_MILLI, lastTimestamp + 1);
+        return lastTimestamp;
+    }
+
+    private static LocalDateTime toLocalDateTime(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plusNanos(timestamp), ZoneId.systemDefault());
+    }
+
+    private Path segmentPath(long segmentNo) {
+        return directoryPath.resolve("%s%06d%s".formatted(SEGMENT_FILE_PREFIX, segmentNo, SEGMENT_FILE_SUFFIX));
+    }
+
+    private FileChannel openSegmentChannel(long segmentNo, boolean writable) throws IOException {
+        Path segmentPath = segmentPath(segmentNo);
+        return writable
+                ? FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(segmentPath, StandardOpenOption.READ);
+    }
+
+    private void closeChannels() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : segmentChannels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        segmentChannels.clear();
+        activeChannel = null;
+        activeEntries.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void validateNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Segment store already closed - '%s'".formatted(directoryPath));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            closeChannels();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes at explicit positions, so that concurrent positional reads of the same channel are not disturbed.
+     */
+    private static class PositionalOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private long position;
+
+        PositionalOutputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            writeFully(channel, buffer, position);
+            position += len;
+        }
+    }
+}
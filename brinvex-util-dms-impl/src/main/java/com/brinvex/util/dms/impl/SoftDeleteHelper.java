@@ -0,0 +1,209 @@
+package com.brinvex.util.dms.impl;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Naming of the deleted and overridden versions: {@code _DEL_<version time>_!@#-<key>}, {@code _OVR_<version time>_!@#-<key>}.
+ * <p>
+ * The version time is {@code yyyyMMdd_HHmmss_SSS}, optionally followed by {@code _NNNNNN},
+ * a sequence distinguishing the versions created within the same millisecond.
+ * The sequence is carried in the sub-millisecond nanos of the parsed {@link LocalDateTime},
+ * so the version times stay unique, ordered and comparable to plain timestamps.
+ * Names without the sequence, including all the names created before it was introduced, have it equal to zero.
+ */
+@SuppressWarnings("SpellCheckingInspection")
+class SoftDeleteHelper {
+
+    /**
+     * A deleted or overridden version of a document, ordered by the time it became obsolete.
+     */
+    record ObsoleteFile(LocalDateTime obsoleteTime, String filename, String origKey, boolean deleted) implements Comparable<ObsoleteFile> {
+        @Override
+        public int compareTo(ObsoleteFile other) {
+            int result = obsoleteTime.compareTo(other.obsoleteTime);
+            return result != 0 ? result : filename.compareTo(other.filename);
+        }
+    }
+
+    private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+    private static final int SHORT_PREFIX_LENGTH = "_DEL_yyyyMMdd_HHmmss_SSS_!@#-".length();
+    private static final int LONG_PREFIX_LENGTH = "_DEL_yyyyMMdd_HHmmss_SSS_NNNNNN_!@#-".length();
+    private static final int NANOS_PER_MILLI = 1_000_000;
+    private static final int MAX_MOVE_ATTEMPTS = 16;
+
+    private static LocalDateTime lastVersionTime = LocalDateTime.MIN;
+
+    /**
+     * Returns the current time truncated to milliseconds, or, if a version was already created in that millisecond
+     * (or the clock went backwards), the last version time incremented by one sequence step.
+     */
+    static synchronized LocalDateTime nextVersionTime() {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        lastVersionTime = now.isAfter(lastVersionTime) ? now : lastVersionTime.plusNanos(1);
+        return lastVersionTime;
+    }
+
+    /**
+     * Renames the file to a new deleted or overridden version.
+     * If the name is already taken, e.g. by another process creating a version in the same millisecond,
+     * it is retried with the next version time.
+     */
+    static Path moveToObsolete(Path path, boolean deleted) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            LocalDateTime versionTime = nextVersionTime();
+            Path obsoletePath = deleted ? contructSoftDeletedPath(path, versionTime) : contructOverriddenPath(path, versionTime);
+            try {
+                Files.move(path, obsoletePath);
+                return obsoletePath;
+            } catch (FileAlreadyExistsException e) {
+                if (attempt >= MAX_MOVE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    static Path contructSoftDeletedPath(Path oldPath, LocalDateTime versionTime) {
+        String prefix = "_DEL_" + formatVersionTime(versionTime) + "_!@#-";
+        return oldPath.getParent().resolve(prefix + oldPath.getFileName());
+    }
+
+    static Path contructOverriddenPath(Path oldPath, LocalDateTime versionTime) {
+        String prefix = "_OVR_" + formatVersionTime(versionTime) + "_!@#-";
+        return oldPath.getParent().resolve(prefix + oldPath.getFileName());
+    }
+
+    private static String formatVersionTime(LocalDateTime versionTime) {
+        int sequence = versionTime.getNano() % NANOS_PER_MILLI;
+        String millis = dtf.format(versionTime);
+        return sequence == 0 ? millis : "%s_%06d".formatted(millis, sequence);
+    }
+
+    /**
+     * Classifies the file name without allocating,
+     * decoding the version time directly from the characters, see {@link #prefixLength(String)}.
+     */
+    static boolean isObsolete(String filename, String origKey, LocalDateTime obsoleteBefore) {
+        int prefixLength = prefixLength(filename);
+        if (prefixLength < 0) {
+            return false;
+        }
+        if (origKey != null && (filename.length() - prefixLength != origKey.length()
+                                || !filename.regionMatches(prefixLength, origKey, 0, origKey.length()))) {
+            return false;
+        }
+        if (obsoleteBefore != null) {
+            long millis = decodeMillis(filename);
+            long beforeMillis = packMillis(obsoleteBefore);
+            if (millis != beforeMillis) {
+                return millis < beforeMillis;
+            }
+            return decodeSequence(filename, prefixLength) < obsoleteBefore.getNano() % NANOS_PER_MILLI;
+        }
+        return true;
+    }
+
+    static boolean isObsolete(String filename) {
+        return prefixLength(filename) >= 0;
+    }
+
+    /**
+     * Parses the obsolete document file name, returns {@code null} if the file is not obsolete.
+     */
+    static ObsoleteFile parseObsolete(String filename) {
+        int prefixLength = prefixLength(filename);
+        if (prefixLength < 0) {
+            return null;
+        }
+        LocalDateTime obsoleteTime = LocalDateTime.of(
+                digits(filename, 5, 4), digits(filename, 9, 2), digits(filename, 11, 2),
+                digits(filename, 14, 2), digits(filename, 16, 2), digits(filename, 18, 2),
+                digits(filename, 21, 3) * NANOS_PER_MILLI + decodeSequence(filename, prefixLength));
+        return new ObsoleteFile(obsoleteTime, filename, filename.substring(prefixLength), filename.charAt(1) == 'D');
+    }
+
+    /**
+     * Returns the length of the {@code _DEL_yyyyMMdd_HHmmss_SSS[_NNNNNN]_!@#-} or {@code _OVR_...} prefix,
+     * or -1 if the file name doesn't start with one, or has nothing after it.
+     */
+    static int prefixLength(String filename) {
+        int length = filename.length();
+        if (length <= SHORT_PREFIX_LENGTH
+            || filename.charAt(0) != '_'
+            || filename.charAt(4) != '_') {
+            return -1;
+        }
+        char c1 = filename.charAt(1);
+        char c2 = filename.charAt(2);
+        char c3 = filename.charAt(3);
+        if (!(c1 == 'D' && c2 == 'E' && c3 == 'L') && !(c1 == 'O' && c2 == 'V' && c3 == 'R')) {
+            return -1;
+        }
+        if (!areDigits(filename, 5, 8)
+            || filename.charAt(13) != '_'
+            || !areDigits(filename, 14, 6)
+            || filename.charAt(20) != '_'
+            || !areDigits(filename, 21, 3)
+            || filename.charAt(24) != '_') {
+            return -1;
+        }
+        if (isMarker(filename, 24)) {
+            return SHORT_PREFIX_LENGTH;
+        }
+        if (length > LONG_PREFIX_LENGTH && areDigits(filename, 25, 6) && isMarker(filename, 31)) {
+            return LONG_PREFIX_LENGTH;
+        }
+        return -1;
+    }
+
+    private static boolean isMarker(String filename, int index) {
+        return filename.charAt(index) == '_'
+               && filename.charAt(index + 1) == '!'
+               && filename.charAt(index + 2) == '@'
+               && filename.charAt(index + 3) == '#'
+               && filename.charAt(index + 4) == '-';
+    }
+
+    private static boolean areDigits(String filename, int from, int count) {
+        for (int i = from, to = from + count; i < to; i++) {
+            char c = filename.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(String filename, int from, int count) {
+        int result = 0;
+        for (int i = from, to = from + count; i < to; i++) {
+            result = result * 10 + (filename.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    /**
+     * The version time up to milliseconds as the decimal number {@code yyyyMMddHHmmssSSS}, which preserves the ordering.
+     */
+    private static long decodeMillis(String filename) {
+        return digits(filename, 5, 8) * 1_000_000_000L
+               + digits(filename, 14, 6) * 1_000L
+               + digits(filename, 21, 3);
+    }
+
+    private static long packMillis(LocalDateTime dateTime) {
+        return (dateTime.getYear() * 10_000L + dateTime.getMonthValue() * 100L + dateTime.getDayOfMonth()) * 1_000_000_000L
+               + (dateTime.getHour() * 10_000L + dateTime.getMinute() * 100L + dateTime.getSecond()) * 1_000L
+               + dateTime.getNano() / NANOS_PER_MILLI;
+    }
+
+    private static int decodeSequence(String filename, int prefixLength) {
+        return prefixLength == LONG_PREFIX_LENGTH ? digits(filename, 25, 6) : 0;
+    }
+}
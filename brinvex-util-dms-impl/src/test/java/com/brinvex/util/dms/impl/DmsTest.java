@@ -1,7 +1,16 @@
 package com.brinvex.util.dms.impl;
 
+import com.brinvex.util.dms.api.AsyncDms;
+import com.brinvex.util.dms.api.ContentCacheStats;
 import com.brinvex.util.dms.api.Dms;
+import com.brinvex.util.dms.api.DmsConfig;
 import com.brinvex.util.dms.api.DmsFactory;
+import com.brinvex.util.dms.api.DocumentVersion;
+import com.brinvex.util.dms.api.HistogramDmsObserver;
+import com.brinvex.util.dms.api.KeyQuery;
+import com.brinvex.util.dms.api.LatencyHistogram;
+import com.brinvex.util.dms.api.PeriodCoverage;
+import com.brinvex.util.dms.api.PutResult;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,14 +18,45 @@ import org.junit.jupiter.api.TestInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -26,13 +66,32 @@ public class DmsTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(DmsTest.class);
 
+    private static Path basePath;
+
     private static DmsFactory dmsFactory;
 
     private Dms dms;
 
+    /**
+     * Parses the periods of the raw keys like {@code 2024}, {@code 2024-01}, {@code 2024-01-15_suffix}, ignoring the keys starting with {@code x}.
+     */
+    private static final Function<String, String> PERIOD_KEY_FNC = rawKey -> rawKey.startsWith("x") ? null : rawKey.substring(0, Math.min(rawKey.length(), 10));
+
+    private static final Function<String, LocalDate> PERIOD_START_FNC = key -> switch (key.length()) {
+        case 4 -> Year.parse(key).atDay(1);
+        case 7 -> YearMonth.parse(key).atDay(1);
+        default -> LocalDate.parse(key);
+    };
+
+    private static final Function<String, LocalDate> PERIOD_END_FNC = key -> switch (key.length()) {
+        case 4 -> Year.parse(key).atMonth(12).atEndOfMonth();
+        case 7 -> YearMonth.parse(key).atEndOfMonth();
+        default -> LocalDate.parse(key);
+    };
+
     @BeforeAll
     static void beforeAll() {
-        Path basePath = Path.of("c:/prj/bx-util/bx-util-dms/test-data/");
+        basePath = Path.of("c:/prj/bx-util/bx-util-dms/test-data/");
         dmsFactory = DmsFactory.newFilesystemDmsFactory(basePath);
     }
 
@@ -112,7 +171,7 @@ public class DmsTest {
     }
 
     @Test
-    void properties() {
+    void properties(TestInfo testInfo) throws IOException {
         String directory = "some/directory";
         String key = "tmp_test.properties";
 
@@ -144,7 +203,21 @@ public class DmsTest {
         props2 = dms.getPropertiesContent(directory, key);
         assertEquals(props1, props2);
         assertEquals(2, props2.size());
+        assertEquals("1234+ľščščťžŤŘČÁĚ", dms.getProperty(directory, key, "B"));
+        assertEquals(null, dms.getProperty(directory, key, "C"));
+
+        Path filePath = basePath.resolve(testInfo.getDisplayName()).resolve(directory).resolve(key);
+        Files.writeString(filePath, "# comment\r\nA=1=2\r\nB=\nA=3", StandardCharsets.UTF_16);
+        assertEquals(Map.of("A", "3", "B", ""), dms.getPropertiesContent(directory, key, StandardCharsets.UTF_16));
+        assertEquals("3", dms.getProperty(directory, key, "A", StandardCharsets.UTF_16));
+        assertEquals("", dms.getProperty(directory, key, "B", StandardCharsets.UTF_16));
 
+        Files.writeString(filePath, "A=1\ninvalid\n");
+        try {
+            dms.getPropertiesContent(directory, key);
+            fail("Should fail");
+        } catch (IllegalStateException expected) {
+        }
     }
 
 
@@ -278,4 +351,1042 @@ public class DmsTest {
         assertEquals(2, hardDeleted);
 
     }
+
+    @Test
+    void keyQuery(TestInfo testInfo) {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        for (Dms queriedDms : List.of(
+                dms,
+                DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withKeyIndexEnabled(true)).getDms(workspace),
+                DmsFactory.newSegmentDmsFactory(basePath).getDms(workspace)
+        )) {
+            queriedDms.resetWorkspace();
+            for (String key : List.of("2023-12", "2024-01", "2024-02", "2024-03", "2025-01", "A", "B")) {
+                queriedDms.put(directory, key, key);
+            }
+            queriedDms.put(directory, "2024-02", "overridden");
+            queriedDms.delete(directory, "B");
+
+            assertEquals(List.of("2023-12", "2024-01", "2024-02", "2024-03", "2025-01", "A"), List.copyOf(queriedDms.getKeys(directory, KeyQuery.all())));
+            assertEquals(List.of("2024-01", "2024-02", "2024-03"), List.copyOf(queriedDms.getKeys(directory, KeyQuery.prefix("2024-"))));
+            assertEquals(List.of("2024-02", "2024-03"), List.copyOf(queriedDms.getKeys(directory, KeyQuery.all().withFrom("2024-02").withTo("2025-01"))));
+            assertEquals(List.of("2024-03", "2025-01"), List.copyOf(queriedDms.getKeys(directory, KeyQuery.all().withFrom("2024").withAfter("2024-02").withLimit(2))));
+            assertEquals(List.of(), List.copyOf(queriedDms.getKeys(directory, KeyQuery.prefix("2024-").withAfter("2024-03"))));
+            assertEquals(List.of(), List.copyOf(queriedDms.getKeys("other/directory", KeyQuery.all())));
+
+            List<String> pagedKeys = new ArrayList<>();
+            KeyQuery page = KeyQuery.all().withLimit(4);
+            for (List<String> keys; !(keys = List.copyOf(queriedDms.getKeys(directory, page))).isEmpty(); page = page.withAfter(keys.getLast())) {
+                assertTrue(keys.size() <= 4);
+                pagedKeys.addAll(keys);
+            }
+            assertEquals(List.copyOf(queriedDms.getKeys(directory)), pagedKeys);
+        }
+    }
+
+    @Test
+    void keyIndex(TestInfo testInfo) {
+        DmsFactory indexedDmsFactory = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withKeyIndexEnabled(true));
+        Dms indexedDms = indexedDmsFactory.getDms(testInfo.getDisplayName());
+        String directory = "some/directory";
+
+        assertTrue(indexedDms.getKeys(directory).isEmpty());
+        assertFalse(indexedDms.exists(directory, "a"));
+
+        indexedDms.add(directory, "b", "some_value");
+        indexedDms.add(directory, "a", "some_value");
+        assertEquals(List.of("a", "b"), List.copyOf(indexedDms.getKeys(directory)));
+        assertTrue(indexedDms.exists(directory, "a"));
+
+        assertTrue(indexedDms.put(directory, "c", "some_value1"));
+        assertFalse(indexedDms.put(directory, "c", "some_value2"));
+        assertEquals(List.of("a", "b", "c"), List.copyOf(indexedDms.getKeys(directory)));
+        assertEquals("some_value2", indexedDms.getTextContent(directory, "c"));
+
+        indexedDms.delete(directory, "b");
+        assertFalse(indexedDms.exists(directory, "b"));
+        assertEquals(List.of("a", "c"), List.copyOf(indexedDms.getKeys(directory)));
+        try {
+            indexedDms.getTextContent(directory, "b");
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(2, indexedDms.purge(directory));
+        assertEquals(List.of("a", "c"), List.copyOf(indexedDms.getKeys(directory)));
+
+        dms.add(directory, "d", "some_value");
+        assertFalse(indexedDms.exists(directory, "d"));
+        indexedDms.refresh(directory);
+        assertTrue(indexedDms.exists(directory, "d"));
+        assertEquals(List.of("a", "c", "d"), List.copyOf(indexedDms.getKeys(directory)));
+        assertEquals(List.of("a", "c", "d"), List.copyOf(dms.getKeys(directory)));
+    }
+
+    @Test
+    void indexedPurge(TestInfo testInfo) {
+        String directory = "some/directory";
+        dms.put(directory, "a", "some_value1");
+        dms.put(directory, "a", "some_value2");
+
+        Dms indexedDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withObsoleteIndexEnabled(true))
+                .getDms(testInfo.getDisplayName());
+        indexedDms.put(directory, "b", "some_value1");
+        indexedDms.put(directory, "b", "some_value2");
+        indexedDms.delete(directory, "b");
+        indexedDms.put(directory, "c", "some_value1");
+        indexedDms.delete(directory, "c");
+
+        assertEquals(0, indexedDms.purge(directory, LocalDateTime.now().minusDays(1)));
+        assertEquals(0, indexedDms.purge(directory, "d", null));
+        assertEquals(2, indexedDms.purge(directory, "b", null));
+        assertEquals(0, indexedDms.purge(directory, "b", null));
+        assertEquals(2, indexedDms.purge(directory, LocalDateTime.now().plusDays(1)));
+        assertEquals(0, indexedDms.purge(directory));
+        assertEquals(0, dms.purge(directory));
+        assertEquals(List.of("a"), List.copyOf(indexedDms.getKeys(directory)));
+    }
+
+    @Test
+    void versions(TestInfo testInfo) {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        for (Dms versionedDms : List.of(
+                dms,
+                DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withKeyIndexEnabled(true).withObsoleteIndexEnabled(true)).getDms(workspace),
+                DmsFactory.newSegmentDmsFactory(basePath).getDms(workspace)
+        )) {
+            String key = "some_key_" + versionedDms.getClass().getSimpleName() + "_" + System.identityHashCode(versionedDms);
+            assertTrue(versionedDms.getVersions(directory, key).isEmpty());
+            versionedDms.put(directory, key, "some_value1");
+            versionedDms.put(directory, key, "some_value2");
+            versionedDms.delete(directory, key);
+
+            List<DocumentVersion> versions = versionedDms.getVersions(directory, key);
+            assertEquals(List.of(DocumentVersion.Kind.OVERRIDDEN, DocumentVersion.Kind.DELETED), versions.stream().map(DocumentVersion::kind).toList());
+            assertTrue(versions.get(0).obsoleteTime().isBefore(versions.get(1).obsoleteTime()));
+            assertArrayEquals("some_value1".getBytes(StandardCharsets.UTF_8), versionedDms.getVersionContent(directory, key, versions.get(0).obsoleteTime()));
+            assertArrayEquals("some_value2".getBytes(StandardCharsets.UTF_8), versionedDms.getVersionContent(directory, key, versions.get(1).obsoleteTime()));
+            try {
+                versionedDms.getVersionContent(directory, key, versions.get(0).obsoleteTime().minusDays(1));
+                fail("Should fail");
+            } catch (IllegalArgumentException expected) {
+            }
+
+            assertEquals(1, versionedDms.purge(directory, key, versions.get(1).obsoleteTime()));
+            assertEquals(List.of(versions.get(1)), versionedDms.getVersions(directory, key));
+        }
+    }
+
+    @Test
+    void rapidVersions(TestInfo testInfo) throws IOException {
+        String directory = "some/directory";
+        String key = "some_key";
+        Path legacyVersion = basePath.resolve(testInfo.getDisplayName()).resolve(directory).resolve("_OVR_20200101_120000_000_!@#-" + key);
+        Files.createDirectories(legacyVersion.getParent());
+        Files.writeString(legacyVersion, "legacy_value");
+
+        for (Dms versionedDms : List.of(dms, DmsFactory.newSegmentDmsFactory(basePath).getDms(testInfo.getDisplayName()))) {
+            for (int i = 0; i < 200; i++) {
+                versionedDms.put(directory, key, "some_value" + i);
+            }
+            versionedDms.delete(directory, key);
+            versionedDms.put(directory, key, "some_value_last");
+
+            List<DocumentVersion> versions = versionedDms.getVersions(directory, key);
+            assertEquals(versionedDms == dms ? 201 : 200, versions.size());
+            assertEquals(versions.size(), versions.stream().map(DocumentVersion::obsoleteTime).distinct().count());
+            DocumentVersion deleted = versions.getLast();
+            assertEquals(DocumentVersion.Kind.DELETED, deleted.kind());
+            assertArrayEquals("some_value199".getBytes(StandardCharsets.UTF_8), versionedDms.getVersionContent(directory, key, deleted.obsoleteTime()));
+            assertEquals("some_value_last", versionedDms.getTextContent(directory, key));
+        }
+
+        assertEquals(LocalDateTime.of(2020, 1, 1, 12, 0), dms.getVersions(directory, key).getFirst().obsoleteTime());
+        assertArrayEquals("legacy_value".getBytes(StandardCharsets.UTF_8), dms.getVersionContent(directory, key, LocalDateTime.of(2020, 1, 1, 12, 0)));
+        assertEquals(1, dms.purge(directory, key, LocalDateTime.of(2021, 1, 1, 0, 0)));
+        assertEquals(200, dms.purge(directory, key, null));
+    }
+
+    @Test
+    void obsoleteFilenames() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 6, 7, 8, 9, 10_000_000);
+        assertTrue(SoftDeleteHelper.isObsolete("_DEL_20240506_070809_010_!@#-k"));
+        assertTrue(SoftDeleteHelper.isObsolete("_OVR_20240506_070809_010_000003_!@#-k"));
+        assertFalse(SoftDeleteHelper.isObsolete("_DEL_20240506_070809_010_!@#-"));
+        assertFalse(SoftDeleteHelper.isObsolete("_DEL_20240506_070809_010_00003_!@#-k"));
+        assertFalse(SoftDeleteHelper.isObsolete("_XYZ_20240506_070809_010_!@#-k"));
+        assertFalse(SoftDeleteHelper.isObsolete("_DEL_2024050x_070809_010_!@#-k"));
+        assertFalse(SoftDeleteHelper.isObsolete("some_key"));
+
+        assertEquals(time.plusNanos(3), SoftDeleteHelper.parseObsolete("_OVR_20240506_070809_010_000003_!@#-k").obsoleteTime());
+        assertEquals("k", SoftDeleteHelper.parseObsolete("_OVR_20240506_070809_010_000003_!@#-k").origKey());
+        assertTrue(SoftDeleteHelper.parseObsolete("_DEL_20240506_070809_010_!@#-k").deleted());
+
+        assertTrue(SoftDeleteHelper.isObsolete("_DEL_20240506_070809_010_!@#-k", "k", time.plusNanos(1)));
+        assertFalse(SoftDeleteHelper.isObsolete("_DEL_20240506_070809_010_!@#-k", "k", time));
+        assertFalse(SoftDeleteHelper.isObsolete("_DEL_20240506_070809_010_!@#-k", "kk", null));
+        assertTrue(SoftDeleteHelper.isObsolete("_OVR_20240506_070809_010_000003_!@#-k", null, time.plusNanos(4)));
+        assertFalse(SoftDeleteHelper.isObsolete("_OVR_20240506_070809_010_000003_!@#-k", null, time.plusNanos(3)));
+        assertTrue(SoftDeleteHelper.isObsolete("_OVR_20231231_235959_999_000003_!@#-k", null, time));
+        assertFalse(SoftDeleteHelper.isObsolete("_OVR_20240506_070809_011_!@#-k", null, time.plusNanos(999_999)));
+    }
+
+    @Test
+    void streamingRead() throws IOException {
+        String directory = "some/directory";
+        String key = "some_key";
+        String content = "line1\nline2\nline3ľščť\n";
+        dms.add(directory, key, content);
+
+        try (InputStream inputStream = dms.openInputStream(directory, key)) {
+            assertArrayEquals(content.getBytes(StandardCharsets.UTF_8), inputStream.readAllBytes());
+        }
+        try (Reader reader = dms.openReader(directory, key); BufferedReader bufferedReader = new BufferedReader(reader)) {
+            assertEquals("line1", bufferedReader.readLine());
+        }
+        try (Stream<String> lines = dms.streamTextLines(directory, key)) {
+            assertEquals(List.of("line1", "line2", "line3ľščť"), lines.toList());
+        }
+        try (Stream<String> lines = dms.streamTextLines(directory, key)) {
+            assertEquals(List.of("line1", "line2"), lines.limit(2).toList());
+        }
+        try {
+            dms.openInputStream(directory, "missing_key").close();
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    void streamingWrite() {
+        String directory = "some/directory";
+        String key = "some_key";
+        byte[] content1 = "some_value1".getBytes(StandardCharsets.UTF_8);
+        byte[] content2 = "some_value2".getBytes(StandardCharsets.UTF_8);
+
+        dms.add(directory, key, new ByteArrayInputStream(content1));
+        assertArrayEquals(content1, dms.getBinaryContent(directory, key));
+        try {
+            dms.add(directory, key, new ByteArrayInputStream(content2));
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertFalse(dms.put(directory, key, Channels.newChannel(new ByteArrayInputStream(content2))));
+        assertArrayEquals(content2, dms.getBinaryContent(directory, key));
+
+        assertTrue(dms.put(directory, "other_key", new ByteArrayInputStream(content1)));
+        dms.add(directory, "another_key", Channels.newChannel(new ByteArrayInputStream(content2)));
+        assertArrayEquals(content2, dms.getBinaryContent(directory, "another_key"));
+
+        InputStream failingStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Simulated failure");
+            }
+        };
+        try {
+            dms.put(directory, key, failingStream);
+            fail("Should fail");
+        } catch (UncheckedIOException expected) {
+        }
+        assertArrayEquals(content2, dms.getBinaryContent(directory, key));
+        assertEquals(List.of("another_key", "other_key", "some_key"), List.copyOf(dms.getKeys(directory)));
+        assertEquals(1, dms.purge(directory));
+    }
+
+    @Test
+    void rangedRead() {
+        String directory = "some/directory";
+        String key = "some_key";
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        dms.add(directory, key, content);
+
+        assertArrayEquals("012".getBytes(StandardCharsets.UTF_8), dms.getBinaryContent(directory, key, 0, 3));
+        assertArrayEquals("789".getBytes(StandardCharsets.UTF_8), dms.getBinaryContent(directory, key, 7, 100));
+        assertArrayEquals(new byte[0], dms.getBinaryContent(directory, key, 20, 5));
+        try {
+            dms.getBinaryContent(directory, key, -1, 5);
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        ByteBuffer mapped = dms.mapContent(directory, key);
+        assertTrue(mapped.isReadOnly());
+        assertEquals(content.length, mapped.remaining());
+        assertEquals('5', mapped.get(5));
+    }
+
+    @Test
+    void batch() {
+        String directory = "some/directory";
+        dms.add(directory, "k1", "old_value1");
+
+        Map<String, String> textContents = new LinkedHashMap<>();
+        for (int i = 1; i <= 100; i++) {
+            textContents.put("k" + i, "value" + i);
+        }
+        Map<String, Boolean> added = dms.putAllTextContent(directory, textContents);
+        assertEquals(List.copyOf(textContents.keySet()), List.copyOf(added.keySet()));
+        assertFalse(added.get("k1"));
+        assertTrue(added.get("k2"));
+        assertEquals(100, dms.getKeys(directory).size());
+        assertEquals(1, dms.purge(directory));
+
+        Map<String, String> loaded = dms.getAllTextContent(directory, List.of("k3", "k1", "k3"));
+        assertEquals(List.of("k3", "k1"), List.copyOf(loaded.keySet()));
+        assertEquals("value3", loaded.get("k3"));
+        assertEquals("value1", loaded.get("k1"));
+
+        dms.putAllBinaryContent(directory, Map.of("b1", new byte[]{1, 2, 3}));
+        assertArrayEquals(new byte[]{1, 2, 3}, dms.getAllBinaryContent(directory, List.of("b1")).get("b1"));
+
+        Map<String, Boolean> exists = dms.existsAll(directory, List.of("k1", "missing", "b1"));
+        assertEquals(Map.of("k1", true, "missing", false, "b1", true), exists);
+
+        try {
+            dms.getAllTextContent(directory, List.of("k1", "missing"));
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    void async(TestInfo testInfo) {
+        AsyncDms asyncDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withAsyncConcurrency(2))
+                .getAsyncDms(testInfo.getDisplayName());
+        String directory = "some/directory";
+
+        List<CompletableFuture<Boolean>> puts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            puts.add(asyncDms.put(directory, "k" + i, "value" + i));
+        }
+        CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).join();
+        assertTrue(puts.stream().allMatch(CompletableFuture::join));
+
+        assertEquals(20, asyncDms.getKeys(directory).join().size());
+        assertEquals(List.of("k1", "k10"), List.copyOf(asyncDms.getKeys(directory, KeyQuery.prefix("k1").withLimit(2)).join()));
+        asyncDms.refresh(directory).join();
+        assertEquals("value7", asyncDms.getTextContent(directory, "k7").join());
+        assertEquals("value7", dms.getTextContent(directory, "k7"));
+        assertEquals(PutResult.UNCHANGED, asyncDms.putIfChanged(directory, "k7", "value7").join());
+        assertEquals(PutResult.UPDATED, asyncDms.putIfChanged(directory, "k7", "value7b").join());
+        List<DocumentVersion> versions = asyncDms.getVersions(directory, "k7").join();
+        assertEquals(1, versions.size());
+        assertEquals("value7", new String(asyncDms.getVersionContent(directory, "k7", versions.getFirst().obsoleteTime()).join(), StandardCharsets.UTF_8));
+        asyncDms.put(directory, "props", Map.of("A", "1")).join();
+        assertEquals("1", asyncDms.getProperty(directory, "props", "A").join());
+
+        try {
+            asyncDms.getTextContent(directory, "missing").join();
+            fail("Should fail");
+        } catch (CompletionException expected) {
+            assertTrue(expected.getCause() instanceof IllegalArgumentException);
+        }
+
+        try (ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor()) {
+            AsyncDms singleThreadAsyncDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults()
+                            .withExecutor(singleThreadExecutor)
+                            .withBatchConcurrency(1))
+                    .getAsyncDms(testInfo.getDisplayName());
+            Map<String, String> contents = Map.of("b1", "v1", "b2", "v2");
+            assertEquals(Map.of("b1", true, "b2", true), singleThreadAsyncDms.putAllTextContent(directory, contents).orTimeout(1, TimeUnit.MINUTES).join());
+            assertEquals(contents, singleThreadAsyncDms.getAllTextContent(directory, contents.keySet()).orTimeout(1, TimeUnit.MINUTES).join());
+            try {
+                singleThreadAsyncDms.getAllTextContent(directory, List.of("b1", "missing")).join();
+                fail("Should fail");
+            } catch (CompletionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalArgumentException);
+            }
+        }
+    }
+
+    @Test
+    void deduplication(TestInfo testInfo) throws IOException {
+        DmsFactory dedupDmsFactory = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withDeduplicationEnabled(true));
+        String workspace1 = testInfo.getDisplayName();
+        String workspace2 = testInfo.getDisplayName() + "_2";
+        Dms dedupDms1 = dedupDmsFactory.getDms(workspace1);
+        Dms dedupDms2 = dedupDmsFactory.getDms(workspace2);
+        dedupDms2.resetWorkspace();
+        dedupDms2.purgeWorkspace(LocalDateTime.now());
+        String directory = "some/directory";
+        String content = "dedup_content_" + LocalDateTime.now();
+
+        dedupDms1.add(directory, "k1", content);
+        dedupDms1.put(directory, "k2", content);
+        dedupDms2.put(directory, "k1", content);
+        dedupDms1.put(directory, "k1", content);
+        assertEquals(content, dedupDms1.getTextContent(directory, "k1"));
+        assertEquals(content, dedupDms2.getTextContent(directory, "k1"));
+
+        Path file1 = basePath.resolve(workspace1).resolve(directory).resolve("k1");
+        Path file2 = basePath.resolve(workspace2).resolve(directory).resolve("k1");
+        assertTrue(Files.isSameFile(file1, file2));
+        // blob + k1 + overridden k1 + k2 + k1 in the second workspace
+        assertEquals(5, Files.getAttribute(file1, "unix:nlink"));
+
+        dedupDms1.put(directory, "k1", "other_content");
+        assertEquals("other_content", dedupDms1.getTextContent(directory, "k1"));
+        assertEquals(content, dedupDms1.getTextContent(directory, "k2"));
+
+        dedupDms1.delete(directory, "k2");
+        assertEquals(3, dedupDms1.purge(directory));
+        assertEquals(2, Files.getAttribute(file2, "unix:nlink"));
+
+        dedupDms2.delete(directory, "k1");
+        assertEquals(1, dedupDms2.purge(directory));
+        dedupDms2.deleteWorkspace();
+        dedupDms2.purgeWorkspace(LocalDateTime.now());
+        assertEquals("other_content", dedupDms1.getTextContent(directory, "k1"));
+        try {
+            dedupDms1.getLastModifiedTime(directory, "k1");
+            fail("Should fail");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        String orphanContent = "orphan_content_" + LocalDateTime.now();
+        dedupDms1.put(directory, "k3", orphanContent);
+        String hash = HexFormat.of().formatHex(ContentDigest.sha256(orphanContent.getBytes(StandardCharsets.UTF_8)));
+        Path blob = basePath.resolve(BlobStore.DIRECTORY_NAME).resolve(hash.substring(0, 2)).resolve(hash);
+        assertTrue(Files.exists(blob));
+        Files.delete(basePath.resolve(workspace1).resolve(directory).resolve("k3"));
+        dedupDms1.purgeWorkspace(LocalDateTime.now());
+        assertFalse(Files.exists(blob));
+    }
+
+    @Test
+    void putIfChanged(TestInfo testInfo) throws IOException {
+        String directory = "some/directory";
+        String key = "some_key";
+
+        assertEquals(PutResult.ADDED, dms.putIfChanged(directory, key, "some_value1"));
+        assertEquals(PutResult.UNCHANGED, dms.putIfChanged(directory, key, "some_value1"));
+        assertEquals(PutResult.UPDATED, dms.putIfChanged(directory, key, "some_value2"));
+        assertEquals(PutResult.UPDATED, dms.putIfChanged(directory, key, "some_value3_longer"));
+        assertEquals(PutResult.UNCHANGED, dms.putIfChanged(directory, key, "some_value3_longer".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("some_value3_longer", dms.getTextContent(directory, key));
+        assertEquals(2, dms.purge(directory));
+
+        dms.put(directory, key, "some_value4");
+        assertEquals(PutResult.UNCHANGED, dms.putIfChanged(directory, key, "some_value4"));
+        assertEquals(1, dms.purge(directory));
+
+        Map<String, String> props = new LinkedHashMap<>();
+        props.put("A", "1");
+        props.put("B", "2");
+        String propsKey = "some.properties";
+        assertEquals(PutResult.ADDED, dms.putIfChanged(directory, propsKey, props));
+        assertEquals(PutResult.UNCHANGED, dms.putIfChanged(directory, propsKey, props));
+        dms.put(directory, propsKey, props);
+        assertEquals(PutResult.UNCHANGED, dms.putIfChanged(directory, propsKey, props));
+        assertEquals(props, dms.getPropertiesContent(directory, propsKey));
+        assertEquals(1, dms.purge(directory));
+
+        // A write of the same length within the resolution of a coarse last-modified time
+        Path filePath = basePath.resolve(testInfo.getDisplayName()).resolve(directory).resolve(key);
+        FileTime lastModifiedTime = Files.getLastModifiedTime(filePath);
+        dms.put(directory, key, "some_value5");
+        Files.setLastModifiedTime(filePath, lastModifiedTime);
+        assertEquals(PutResult.UPDATED, dms.putIfChanged(directory, key, "some_value4"));
+        assertEquals("some_value4", dms.getTextContent(directory, key));
+    }
+
+    @Test
+    void compression(TestInfo testInfo) throws IOException {
+        String directory = "some/directory";
+        String plainDirectory = "plain/directory";
+        dms.add(directory, "legacy_key", "legacy_value");
+
+        Dms compressingDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withCompressedDirectories(directory::equals))
+                .getDms(testInfo.getDisplayName());
+        String content = "line;value\n".repeat(1000);
+        compressingDms.add(directory, "some_key", content);
+        compressingDms.add(plainDirectory, "some_key", content);
+
+        Path compressedFile = basePath.resolve(testInfo.getDisplayName()).resolve(directory).resolve("some_key");
+        Path plainFile = basePath.resolve(testInfo.getDisplayName()).resolve(plainDirectory).resolve("some_key");
+        assertTrue(Files.size(compressedFile) < content.length() / 10);
+        assertEquals(content.length(), Files.size(plainFile));
+
+        assertEquals(List.of("legacy_key", "some_key"), List.copyOf(compressingDms.getKeys(directory)));
+        assertEquals("legacy_value", compressingDms.getTextContent(directory, "legacy_key"));
+        assertEquals(content, compressingDms.getTextContent(directory, "some_key"));
+        assertEquals(content, compressingDms.getTextContent(plainDirectory, "some_key"));
+        assertEquals(1000, compressingDms.getTextLines(directory, "some_key").size());
+        assertEquals(List.of("line;value", "line;value"), compressingDms.getTextLines(directory, "some_key", 2));
+        try (Stream<String> lines = compressingDms.streamTextLines(directory, "some_key")) {
+            assertEquals(1000, lines.count());
+        }
+        assertArrayEquals("value".getBytes(StandardCharsets.UTF_8), compressingDms.getBinaryContent(directory, "some_key", 5, 5));
+        assertArrayEquals(new byte[0], compressingDms.getBinaryContent(directory, "some_key", 100_000, 5));
+        assertEquals(content.length(), compressingDms.mapContent(directory, "some_key").remaining());
+
+        Map<String, String> props = Map.of("A", "ľščť");
+        compressingDms.put(directory, "some.properties", props);
+        assertEquals(props, compressingDms.getPropertiesContent(directory, "some.properties"));
+        assertEquals(PutResult.UNCHANGED, compressingDms.putIfChanged(directory, "some.properties", props));
+        assertEquals(PutResult.UNCHANGED, compressingDms.putIfChanged(directory, "legacy_key", "legacy_value"));
+        assertEquals(PutResult.UPDATED, compressingDms.putIfChanged(directory, "legacy_key", "new_value"));
+        assertEquals("new_value", compressingDms.getTextContent(directory, "legacy_key"));
+
+        // A plain document starting like a compressed one is read as it is outside the selected directories
+        byte[] headerLikeContent = "BXDMSZ01 not compressed".getBytes(StandardCharsets.US_ASCII);
+        compressingDms.put(plainDirectory, "header_like", headerLikeContent);
+        assertArrayEquals(headerLikeContent, compressingDms.getBinaryContent(plainDirectory, "header_like"));
+        assertArrayEquals(Arrays.copyOfRange(headerLikeContent, 9, 12), compressingDms.getBinaryContent(plainDirectory, "header_like", 9, 3));
+        assertEquals(headerLikeContent.length, compressingDms.mapContent(plainDirectory, "header_like").remaining());
+        assertEquals(PutResult.UNCHANGED, compressingDms.putIfChanged(plainDirectory, "header_like", headerLikeContent));
+    }
+
+    @Test
+    void segmentStorage(TestInfo testInfo) throws IOException {
+        String workspace = testInfo.getDisplayName();
+        Dms segmentDms = DmsFactory.newSegmentDmsFactory(basePath).getDms(workspace);
+        String directory = "some/directory";
+
+        segmentDms.add(directory, "k1", "v1");
+        assertTrue(segmentDms.put(directory, "k2", "v2"));
+        assertFalse(segmentDms.put(directory, "k1", "v1_new"));
+        segmentDms.put(directory, "k3", Map.of("A", "1"));
+        segmentDms.add(directory, "k4", new ByteArrayInputStream("line1\nline2\n".getBytes(StandardCharsets.UTF_8)));
+        try {
+            segmentDms.add(directory, "k1", "v1");
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(List.of("k1", "k2", "k3", "k4"), List.copyOf(segmentDms.getKeys(directory)));
+        assertEquals("v1_new", segmentDms.getTextContent(directory, "k1"));
+        assertEquals(Map.of("A", "1"), segmentDms.getPropertiesContent(directory, "k3"));
+        assertEquals("1", segmentDms.getProperty(directory, "k3", "A"));
+        assertEquals(List.of("line1", "line2"), segmentDms.getTextLines(directory, "k4"));
+        assertEquals(List.of("line1"), segmentDms.getTextLines(directory, "k4", 1));
+        assertArrayEquals("ine2".getBytes(StandardCharsets.UTF_8), segmentDms.getBinaryContent(directory, "k4", 7, 4));
+        assertEquals(12, segmentDms.mapContent(directory, "k4").remaining());
+        try (InputStream inputStream = segmentDms.openInputStream(directory, "k2")) {
+            assertEquals("v2", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(PutResult.UNCHANGED, segmentDms.putIfChanged(directory, "k2", "v2"));
+        segmentDms.delete(directory, "k2");
+        assertFalse(segmentDms.exists(directory, "k2"));
+
+        Dms reopenedDms = DmsFactory.newSegmentDmsFactory(basePath).getDms(workspace);
+        assertEquals(List.of("k1", "k3", "k4"), List.copyOf(reopenedDms.getKeys(directory)));
+        assertEquals("v1_new", reopenedDms.getTextContent(directory, "k1"));
+
+        assertEquals(1, reopenedDms.purge(directory, "k1", null));
+        assertEquals(1, reopenedDms.purge(directory));
+        assertEquals(0, reopenedDms.purge(directory));
+        try (Stream<Path> segments = Files.list(basePath.resolve(workspace).resolve(directory))) {
+            assertEquals(1, segments.count());
+        }
+        assertEquals(Map.of("k1", "v1_new", "k4", "line1\nline2\n"), reopenedDms.getAllTextContent(directory, List.of("k1", "k4")));
+
+        reopenedDms.put(directory, "k5", "v5");
+        segmentDms.refresh(directory);
+        assertEquals("v5", segmentDms.getTextContent(directory, "k5"));
+    }
+
+    /**
+     * Reads of the segment layout racing with the overrides, the purges compacting the segments they read from
+     * and the refreshes closing the segments.
+     */
+    @Test
+    void segmentReadDuringPurge(TestInfo testInfo) throws InterruptedException {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        String key = "k";
+        Dms segmentDms = DmsFactory.newSegmentDmsFactory(basePath).getDms(workspace);
+        segmentDms.resetWorkspace();
+        segmentDms.put(directory, key, "v".repeat(1000));
+        int iterations = 300;
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        try (ExecutorService executorService = Executors.newFixedThreadPool(2)) {
+            executorService.execute(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        segmentDms.put(directory, key, String.valueOf(i % 10).repeat(1000));
+                        segmentDms.purge(directory);
+                        segmentDms.refresh(directory);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            executorService.execute(() -> {
+                try {
+                    for (int i = 0; i < iterations; i++) {
+                        assertEquals(1000, segmentDms.getBinaryContent(directory, key).length);
+                        try (InputStream inputStream = segmentDms.openInputStream(directory, key)) {
+                            assertEquals(1000, inputStream.readAllBytes().length);
+                        }
+                        assertEquals(1000, segmentDms.mapContent(directory, key).remaining());
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+        }
+        if (!failures.isEmpty()) {
+            AssertionError error = new AssertionError("Reading during the purges failed");
+            failures.forEach(error::addSuppressed);
+            throw error;
+        }
+    }
+
+    @Test
+    void observer(TestInfo testInfo) {
+        String workspace = testInfo.getDisplayName();
+        HistogramDmsObserver observer = new HistogramDmsObserver();
+        DmsConfig config = DmsConfig.defaults().withObserver(observer);
+        Map<String, Dms> directoryToDms = Map.of(
+                "filesystem/directory", DmsFactory.newFilesystemDmsFactory(basePath, config).getDms(workspace),
+                "segment/directory", DmsFactory.newSegmentDmsFactory(basePath, config).getDms(workspace)
+        );
+        for (Map.Entry<String, Dms> e : directoryToDms.entrySet()) {
+            String directory = e.getKey();
+            Dms observedDms = e.getValue();
+            observedDms.put(directory, "k1", "1234");
+            observedDms.put(directory, "k1", "123456");
+            observedDms.getTextContent(directory, "k1");
+            observedDms.getAllTextContent(directory, List.of("k1"));
+            try {
+                observedDms.getTextContent(directory, "k2");
+                fail("Should fail");
+            } catch (IllegalArgumentException expected) {
+            }
+
+            HistogramDmsObserver.Stats putStats = observer.getStats("put", workspace, directory);
+            assertEquals(2, putStats.latency().count());
+            assertEquals(10, putStats.bytes());
+            assertEquals(0, putStats.failures());
+            HistogramDmsObserver.Stats getStats = observer.getStats("getTextContent", workspace, directory);
+            assertEquals(2, getStats.latency().count());
+            assertEquals(6, getStats.bytes());
+            assertEquals(1, getStats.failures());
+            assertEquals(6, observer.getStats("getAllTextContent", workspace, directory).bytes());
+            assertTrue(putStats.latency().valueAtPercentile(99) <= putStats.latency().max());
+        }
+
+        Dms failingObserverDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withObserver(event -> {
+            throw new IllegalStateException("Observer failure");
+        })).getDms(workspace);
+        failingObserverDms.put("some/directory", "k3", "v3");
+        assertEquals("v3", failingObserverDms.getTextContent("some/directory", "k3"));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1_000_000, histogram.max());
+        assertEquals(500_500, histogram.mean(), 0.001);
+        long p50 = histogram.valueAtPercentile(50);
+        assertTrue(p50 >= 500_000 && p50 < 500_000 * 1.07, "p50=" + p50);
+        assertEquals(1_000_000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    void contentCache(TestInfo testInfo) throws IOException {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        Dms cachingDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults()
+                .withContentCacheMaxBytes(1000)
+                .withContentCacheValidationEnabled(true)
+        ).getDms(workspace);
+        assertEquals(null, dms.getContentCacheStats());
+
+        cachingDms.put(directory, "fees", Map.of("A", "1"));
+        assertEquals(Map.of("A", "1"), cachingDms.getPropertiesContent(directory, "fees"));
+        cachingDms.getPropertiesContent(directory, "fees").put("B", "2");
+        assertEquals(Map.of("A", "1"), cachingDms.getPropertiesContent(directory, "fees"));
+        ContentCacheStats stats = cachingDms.getContentCacheStats();
+        assertEquals(1, stats.missCount());
+        assertEquals(2, stats.hitCount());
+        assertEquals(1, stats.entryCount());
+
+        cachingDms.put(directory, "fees", Map.of("A", "2"));
+        assertEquals(Map.of("A", "2"), cachingDms.getPropertiesContent(directory, "fees"));
+        assertEquals(2, cachingDms.getContentCacheStats().missCount());
+
+        Path filePath = basePath.resolve(workspace).resolve(directory).resolve("fees");
+        Files.writeString(filePath, "A=3\nB=4\n");
+        Files.setLastModifiedTime(filePath, FileTime.from(Instant.now().plusSeconds(60)));
+        assertEquals(Map.of("A", "3", "B", "4"), cachingDms.getPropertiesContent(directory, "fees"));
+
+        cachingDms.delete(directory, "fees");
+        try {
+            cachingDms.getPropertiesContent(directory, "fees");
+            fail("Should fail");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        for (int i = 0; i < 10; i++) {
+            cachingDms.put(directory, "k" + i, new byte[200]);
+            assertEquals(200, cachingDms.getBinaryContent(directory, "k" + i).length);
+        }
+        stats = cachingDms.getContentCacheStats();
+        assertTrue(stats.evictionCount() > 0);
+        assertTrue(stats.weightBytes() <= 1000);
+        cachingDms.getBinaryContent(directory, "k9")[0] = 1;
+        assertEquals(0, cachingDms.getBinaryContent(directory, "k9")[0]);
+
+        cachingDms.refresh(directory);
+        assertEquals(0, cachingDms.getContentCacheStats().entryCount());
+
+        cachingDms.put(directory, "latin1", "c".repeat(100));
+        cachingDms.put(directory, "utf16", "č".repeat(100));
+        cachingDms.getTextContent(directory, "latin1");
+        long latin1Weight = cachingDms.getContentCacheStats().weightBytes();
+        cachingDms.getTextContent(directory, "utf16");
+        assertEquals(latin1Weight + 100, cachingDms.getContentCacheStats().weightBytes() - latin1Weight);
+    }
+
+    @Test
+    void hashedLayout(TestInfo testInfo) throws IOException {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        Path directoryPath = basePath.resolve(workspace).resolve(directory);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add("doc_%03d".formatted(i));
+            dms.put(directory, keys.getLast(), "some_value1");
+        }
+        dms.put(directory, "doc_000", "some_value2");
+        dms.delete(directory, "doc_001");
+        keys.remove("doc_001");
+
+        assertEquals(keys.size() + 2, FilesystemLayoutMigration.migrate(basePath, workspace, true));
+        assertEquals(0, FilesystemLayoutMigration.migrate(basePath, workspace, true));
+        try (Stream<Path> children = Files.list(directoryPath)) {
+            assertTrue(children.allMatch(child -> Files.isDirectory(child) && DirectoryLayout.isShardName(child.getFileName().toString())));
+        }
+
+        DmsConfig hashedConfig = DmsConfig.defaults().withHashedLayoutEnabled(true);
+        for (Dms hashedDms : List.of(
+                DmsFactory.newFilesystemDmsFactory(basePath, hashedConfig).getDms(workspace),
+                DmsFactory.newFilesystemDmsFactory(basePath, hashedConfig.withKeyIndexEnabled(true)).getDms(workspace)
+        )) {
+            assertEquals(keys, List.copyOf(hashedDms.getKeys(directory)));
+            assertEquals(List.of("doc_010", "doc_011"), List.copyOf(hashedDms.getKeys(directory, KeyQuery.prefix("doc_01").withLimit(2))));
+            assertEquals("some_value2", hashedDms.getTextContent(directory, "doc_000"));
+            assertFalse(hashedDms.exists(directory, "doc_001"));
+            assertEquals(1, hashedDms.getVersions(directory, "doc_000").size());
+            assertEquals(1, hashedDms.getVersions(directory, "doc_001").size());
+        }
+
+        Dms hashedDms = DmsFactory.newFilesystemDmsFactory(basePath, hashedConfig).getDms(workspace);
+        hashedDms.add(directory, "new", "some_value");
+        assertTrue(Files.exists(directoryPath.resolve(DirectoryLayout.shardOf("new")).resolve("new")));
+        hashedDms.put(directory, "new", "some_value2");
+        LocalDateTime overriddenTime = hashedDms.getVersions(directory, "new").getFirst().obsoleteTime();
+        assertArrayEquals("some_value".getBytes(StandardCharsets.UTF_8), hashedDms.getVersionContent(directory, "new", overriddenTime));
+        assertEquals(1, hashedDms.purge(directory, "new", null));
+        assertEquals(2, hashedDms.purge(directory));
+        keys.add("new");
+        assertEquals(keys.stream().sorted().toList(), List.copyOf(hashedDms.getKeys(directory)));
+
+        assertEquals(keys.size(), FilesystemLayoutMigration.migrate(basePath, workspace, false));
+        try (Stream<Path> children = Files.list(directoryPath)) {
+            assertTrue(children.allMatch(Files::isRegularFile));
+        }
+        assertEquals(keys.stream().sorted().toList(), List.copyOf(dms.getKeys(directory)));
+        assertEquals("some_value2", dms.getTextContent(directory, "new"));
+    }
+
+    /**
+     * The subdirectories named by hex digits, like the months of a year, must not be taken for the shards.
+     */
+    @Test
+    void hashedLayoutHexNamedDirectories(TestInfo testInfo) {
+        String workspace = testInfo.getDisplayName();
+        String parentDirectory = "2024";
+        String directory = "2024/01";
+        List<String> keys = new ArrayList<>();
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add("doc_%03d".formatted(i));
+            contents.put(keys.getLast(), keys.getLast());
+        }
+        dms.putAllTextContent(directory, contents);
+        dms.put(parentDirectory, "summary", "some_value");
+
+        assertEquals(keys.size() + 1, FilesystemLayoutMigration.migrate(basePath, workspace, true));
+        Dms hashedDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withHashedLayoutEnabled(true)).getDms(workspace);
+        assertEquals(keys, List.copyOf(hashedDms.getKeys(directory)));
+        assertEquals(List.of("summary"), List.copyOf(hashedDms.getKeys(parentDirectory)));
+        assertEquals("doc_999", hashedDms.getTextContent(directory, "doc_999"));
+        for (String shardDirectory : List.of(DirectoryLayout.shardOf("x"), parentDirectory + "/" + DirectoryLayout.shardOf("x"))) {
+            try {
+                hashedDms.put(shardDirectory, "x", "some_value");
+                fail("Should fail");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+
+        assertEquals(keys.size() + 1, FilesystemLayoutMigration.migrate(basePath, workspace, false));
+        assertEquals(keys, List.copyOf(dms.getKeys(directory)));
+        assertEquals("doc_999", dms.getTextContent(directory, "doc_999"));
+        assertEquals("some_value", dms.getTextContent(parentDirectory, "summary"));
+    }
+
+    @Test
+    void periodIndex(TestInfo testInfo) {
+        String directory = "some/directory";
+        Function<String, String> keyFnc = PERIOD_KEY_FNC;
+        Function<String, LocalDate> startFnc = PERIOD_START_FNC;
+        Function<String, LocalDate> endFnc = PERIOD_END_FNC;
+        Dms indexedDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withPeriodIndexEnabled(true))
+                .getDms(testInfo.getDisplayName());
+        for (String key : List.of("2023-01", "2023-02", "2023-03", "2023-03-15", "2023-05", "x_other")) {
+            indexedDms.put(directory, key, "some_value");
+        }
+        assertEquals(Map.of("2023-03-15", "2023-03-15"), indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc));
+
+        indexedDms.add(directory, "2023", "some_value");
+        indexedDms.put(directory, "2024-01-01", "some_value");
+        indexedDms.put(directory, "2023-05", "some_value");
+        assertEquals(dms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc), indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc));
+        assertEquals(List.of("2023-01", "2023-02", "2023-03-15"),
+                List.copyOf(indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc).sequencedValues()));
+
+        indexedDms.delete(directory, "2023");
+        assertEquals(dms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc), indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc));
+        assertEquals(Map.of("2023-03-15", "2023-03-15"), indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc));
+
+        indexedDms.add(directory, "2023-05-01_dup", "some_value");
+        indexedDms.add(directory, "2023-05-01", "some_value");
+        try {
+            indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc);
+            fail("Should fail");
+        } catch (IllegalStateException expected) {
+        }
+        indexedDms.delete(directory, "2023-05-01_dup");
+        assertEquals(dms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc), indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc));
+        assertEquals(List.of("2023-03-15", "2023-05-01"),
+                List.copyOf(indexedDms.getRedundantPeriodKeys(directory, keyFnc, startFnc, endFnc).sequencedValues()));
+
+        AtomicInteger parsedKeys = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            Function<String, String> capturingKeyFnc = rawKey -> {
+                parsedKeys.incrementAndGet();
+                return keyFnc.apply(rawKey);
+            };
+            indexedDms.getRedundantPeriodKeys(directory, capturingKeyFnc, startFnc, endFnc);
+        }
+        assertEquals(indexedDms.getKeys(directory).size(), parsedKeys.get());
+    }
+
+    @Test
+    void coveringPeriodKeys(TestInfo testInfo) {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        for (Dms coveringDms : List.of(
+                dms,
+                DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withKeyIndexEnabled(true).withPeriodIndexEnabled(true)).getDms(workspace),
+                DmsFactory.newSegmentDmsFactory(basePath).getDms(workspace)
+        )) {
+            coveringDms.resetWorkspace();
+            for (String key : List.of("2023", "2023-01", "2023-02", "2023-03", "2023-03-15", "2024-01", "2024-03-10", "x_other")) {
+                coveringDms.put(directory, key, "some_value");
+            }
+
+            PeriodCoverage<String> coverage = coveringDms.getCoveringPeriodKeys(directory, PERIOD_KEY_FNC, PERIOD_START_FNC, PERIOD_END_FNC,
+                    LocalDate.parse("2023-02-01"), LocalDate.parse("2024-03-31"));
+            assertEquals(List.of("2023", "2024-01", "2024-03-10"), List.copyOf(coverage.keys().sequencedValues()));
+            assertEquals(List.of(
+                    new PeriodCoverage.Gap(LocalDate.parse("2024-02-01"), LocalDate.parse("2024-03-09")),
+                    new PeriodCoverage.Gap(LocalDate.parse("2024-03-11"), LocalDate.parse("2024-03-31"))
+            ), coverage.gaps());
+
+            coverage = coveringDms.getCoveringPeriodKeys(directory, PERIOD_KEY_FNC, PERIOD_START_FNC, PERIOD_END_FNC,
+                    LocalDate.parse("2023-03-01"), LocalDate.parse("2023-03-31"));
+            assertEquals(List.of("2023"), List.copyOf(coverage.keys().sequencedValues()));
+            assertTrue(coverage.isComplete());
+
+            coveringDms.delete(directory, "2023");
+            coverage = coveringDms.getCoveringPeriodKeys(directory, PERIOD_KEY_FNC, PERIOD_START_FNC, PERIOD_END_FNC,
+                    LocalDate.parse("2022-12-01"), LocalDate.parse("2023-03-31"));
+            assertEquals(List.of("2023-01", "2023-02", "2023-03"), List.copyOf(coverage.keys().sequencedValues()));
+            assertEquals(List.of(new PeriodCoverage.Gap(LocalDate.parse("2022-12-01"), LocalDate.parse("2022-12-31"))), coverage.gaps());
+
+            try {
+                coveringDms.getCoveringPeriodKeys(directory, PERIOD_KEY_FNC, PERIOD_START_FNC, PERIOD_END_FNC,
+                        LocalDate.parse("2023-03-31"), LocalDate.parse("2023-03-01"));
+                fail("Should fail");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    /**
+     * Many threads writing, deleting and reading a few shared keys, while the workspace is reset twice.
+     * Every read must see a whole content, never a half-written or a missing file of an existing document.
+     */
+    @Test
+    void concurrentAccess(TestInfo testInfo) throws InterruptedException {
+        String workspace = testInfo.getDisplayName();
+        String directory = "some/directory";
+        List<String> keys = List.of("k0", "k1", "k2", "k3", "k4", "k5", "k6", "k7");
+        for (boolean indexesEnabled : List.of(false, true)) {
+            DmsConfig config = DmsConfig.defaults()
+                    .withKeyIndexEnabled(indexesEnabled)
+                    .withObsoleteIndexEnabled(indexesEnabled)
+                    .withPeriodIndexEnabled(indexesEnabled);
+            Dms sharedDms = DmsFactory.newFilesystemDmsFactory(basePath, config).getDms(workspace);
+            sharedDms.resetWorkspace();
+            int threadCount = 8;
+            int iterations = 300;
+            Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            CountDownLatch start = new CountDownLatch(1);
+            try (ExecutorService executorService = Executors.newFixedThreadPool(threadCount)) {
+                for (int t = 0; t < threadCount; t++) {
+                    int thread = t;
+                    executorService.execute(() -> {
+                        try {
+                            start.await();
+                            ThreadLocalRandom random = ThreadLocalRandom.current();
+                            for (int i = 0; i < iterations; i++) {
+                                String key = keys.get(random.nextInt(keys.size()));
+                                String content = (key + ":" + thread + ":" + i + ";").repeat(500);
+                                try {
+                                    if (thread == 0 && (i == iterations / 3 || i == 2 * iterations / 3)) {
+                                        sharedDms.resetWorkspace();
+                                    }
+                                    switch (random.nextInt(6)) {
+                                        case 0 -> sharedDms.add(directory, key, content);
+                                        case 1, 2 -> sharedDms.put(directory, key, content);
+                                        case 3 -> sharedDms.delete(directory, key);
+                                        case 4 -> {
+                                            String readContent = sharedDms.getTextContent(directory, key);
+                                            String unit = readContent.substring(0, readContent.indexOf(';') + 1);
+                                            assertTrue(unit.startsWith(key + ":"), readContent);
+                                            assertEquals(unit.repeat(500), readContent);
+                                        }
+                                        default -> assertTrue(keys.containsAll(sharedDms.getKeys(directory)));
+                                    }
+                                } catch (IllegalArgumentException expected) {
+                                    // Adding an existing or deleting or reading a missing document
+                                }
+                            }
+                        } catch (Throwable e) {
+                            failures.add(e);
+                        }
+                    });
+                }
+                start.countDown();
+            }
+            if (!failures.isEmpty()) {
+                AssertionError error = new AssertionError("Concurrent access failed, indexesEnabled=%s".formatted(indexesEnabled));
+                failures.forEach(error::addSuppressed);
+                throw error;
+            }
+
+            List<String> listedKeys = List.copyOf(dms.getKeys(directory));
+            assertEquals(listedKeys, List.copyOf(sharedDms.getKeys(directory)));
+            for (String key : keys) {
+                assertEquals(listedKeys.contains(key), sharedDms.exists(directory, key));
+            }
+        }
+    }
+
+    /**
+     * Several forked JVMs overriding and reading the same documents of two directories with the cross-process locking.
+     * Every read must see a whole content and every override must keep its version.
+     */
+    @Test
+    void crossProcessLocking(TestInfo testInfo) throws IOException, InterruptedException {
+        String workspace = testInfo.getDisplayName();
+        Dms lockingDms = DmsFactory.newFilesystemDmsFactory(basePath, DmsConfig.defaults().withCrossProcessLockingEnabled(true)).getDms(workspace);
+        for (String directory : CrossProcessWorker.DIRECTORIES) {
+            for (String key : CrossProcessWorker.KEYS) {
+                lockingDms.put(directory, key, CrossProcessWorker.content(key, -1, -1));
+            }
+        }
+
+        int processCount = 4;
+        String javaPath = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < processCount; i++) {
+            processes.add(new ProcessBuilder(javaPath, "-cp", System.getProperty("java.class.path"), CrossProcessWorker.class.getName(),
+                    basePath.toAbsolutePath().toString(), workspace, String.valueOf(i))
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+        for (Process process : processes) {
+            assertTrue(process.waitFor(2, TimeUnit.MINUTES));
+            assertEquals(0, process.exitValue());
+        }
+
+        for (String directory : CrossProcessWorker.DIRECTORIES) {
+            for (String key : CrossProcessWorker.KEYS) {
+                CrossProcessWorker.verify(key, lockingDms.getTextContent(directory, key));
+                int puts = 0;
+                for (int i = 0; i < CrossProcessWorker.ITERATIONS; i++) {
+                    if (CrossProcessWorker.isPut(i) && CrossProcessWorker.directory(i).equals(directory) && CrossProcessWorker.key(i).equals(key)) {
+                        puts++;
+                    }
+                }
+                assertEquals(processCount * puts, lockingDms.getVersions(directory, key).size());
+            }
+        }
+    }
+
+    /**
+     * The forked JVM of {@link #crossProcessLocking}, alternately overriding and reading the documents.
+     * Exits with 1 on a failure.
+     */
+    static class CrossProcessWorker {
+
+        static final List<String> DIRECTORIES = List.of("dir0", "dir1");
+
+        static final List<String> KEYS = List.of("k0", "k1", "k2");
+
+        static final int ITERATIONS = 240;
+
+        static String directory(int i) {
+            return DIRECTORIES.get(i / 2 % DIRECTORIES.size());
+        }
+
+        static String key(int i) {
+            return KEYS.get(i / 4 % KEYS.size());
+        }
+
+        static boolean isPut(int i) {
+            return i % 2 == 0;
+        }
+
+        static String content(String key, int process, int i) {
+            return (key + ":" + process + ":" + i + ";").repeat(2000);
+        }
+
+        static void verify(String key, String content) {
+            String unit = content.substring(0, content.indexOf(';') + 1);
+            if (!unit.startsWith(key + ":") || !unit.repeat(2000).equals(content)) {
+                throw new AssertionError("Torn content: key=%s, length=%s, unit=%s".formatted(key, content.length(), unit));
+            }
+        }
+
+        public static void main(String[] args) {
+            Dms workerDms = DmsFactory.newFilesystemDmsFactory(Path.of(args[0]), DmsConfig.defaults().withCrossProcessLockingEnabled(true)).getDms(args[1]);
+            int process = Integer.parseInt(args[2]);
+            try {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    String directory = directory(i);
+                    String key = key(i);
+                    if (isPut(i)) {
+                        workerDms.put(directory, key, content(key, process, i));
+                    } else {
+                        verify(key, workerDms.getTextContent(directory, key));
+                    }
+                }
+            } catch (Throwable e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
 }